@@ -0,0 +1,127 @@
+package com.steven.ai.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 会话记忆配置，对应 application.yaml 中的 chat-memory 节点
+ */
+@Data
+@ConfigurationProperties(prefix = "chat-memory")
+public class ChatMemoryProperties {
+
+    private Window window = new Window();
+
+    private Summary summary = new Summary();
+
+    private Journal journal = new Journal();
+
+    private Tiered tiered = new Tiered();
+
+    public enum Provider {
+        OLLAMA, DASHSCOPE
+    }
+
+    @Data
+    public static class Window {
+        /**
+         * 是否按 token 预算只把最近的历史消息发给模型；关闭时发送最近 100 条
+         */
+        private boolean enabled = true;
+        /**
+         * 未单独配置的业务类型使用的 token 预算
+         */
+        private int defaultMaxTokens = 4000;
+        /**
+         * 各业务类型（chat、service、travel、pdf）的历史消息 token 预算
+         */
+        private Map<String, Integer> maxTokens = new HashMap<>(Map.of(
+                "chat", 4000,
+                "service", 3000,
+                "travel", 6000,
+                "pdf", 2000));
+
+        public int maxTokensOf(String type) {
+            return maxTokens.getOrDefault(type, defaultMaxTokens);
+        }
+    }
+
+    @Data
+    public static class Summary {
+        /**
+         * 是否在后台把较早的对话压缩成滚动摘要
+         */
+        private boolean enabled = true;
+        /**
+         * 生成摘要的模型：ollama 为 spring.ai.ollama 配置的本地模型，dashscope 为 spring.ai.openai 配置的百炼模型
+         */
+        private Provider provider = Provider.OLLAMA;
+        /**
+         * 摘要使用的模型名，为空时使用对应模型的默认配置
+         */
+        private String model;
+        /**
+         * 未摘要部分的估算 token 数超过该值时开始摘要
+         */
+        private int triggerTokens = 3000;
+        /**
+         * 摘要时保持原样的最近消息数
+         */
+        private int keepRecentMessages = 8;
+        /**
+         * 摘要的字数上限
+         */
+        private int maxSummaryChars = 800;
+        /**
+         * 后台摘要线程数
+         */
+        private int threads = 1;
+    }
+
+    @Data
+    public static class Journal {
+        /**
+         * 是否把每条消息和会话列表的变更追加到日志；关闭时只在应用正常退出时整体保存
+         */
+        private boolean enabled = true;
+        /**
+         * 日志文件名前缀，实际文件为 file.{代}
+         */
+        private String file = "chat-memory.journal";
+        /**
+         * 日志累计超过该大小（MB）时保存快照（chat-history.json、chat-memory.json）并删除旧日志
+         */
+        private int snapshotThresholdMb = 16;
+        /**
+         * 检查是否需要保存快照的间隔（秒）
+         */
+        private int snapshotIntervalSeconds = 60;
+    }
+
+    @Data
+    public static class Tiered {
+        /**
+         * 是否把空闲的会话压缩写入磁盘、释放内存，下次访问时载回
+         */
+        private boolean enabled = true;
+        /**
+         * 溢出文件目录，启动时清空
+         */
+        private String spillDirectory = "chat-memory-spill";
+        /**
+         * 超过该时长（秒）未访问的会话写入磁盘，0 表示不按空闲时间写出
+         */
+        private long idleSeconds = 600;
+        /**
+         * 内存中会话的估算大小上限（MB），超出时按最久未访问写入磁盘，0 表示不限
+         */
+        private long maxHeapMb = 256;
+        /**
+         * 检查间隔（秒）
+         */
+        private long sweepIntervalSeconds = 30;
+    }
+}
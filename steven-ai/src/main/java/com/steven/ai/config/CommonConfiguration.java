@@ -1,30 +1,49 @@
 package com.steven.ai.config;
 
 import com.steven.ai.constants.SystemConstants;
+import com.steven.ai.embedding.BatchingEmbeddingModel;
+import com.steven.ai.embedding.CachingEmbeddingModel;
+import com.steven.ai.embedding.EmbeddingCache;
+import com.steven.ai.memory.ConcurrentChatMemory;
+import com.steven.ai.memory.SummarizingChatMemory;
+import com.steven.ai.memory.TokenWindowChatMemory;
 import com.steven.ai.model.AlibabaOpenAiChatModel;
 import com.steven.ai.tools.CourseTools;
+import com.steven.ai.vectorstore.FlatVectorStore;
+import com.steven.ai.vectorstore.HnswVectorStore;
+import com.steven.ai.vectorstore.LexicalIndex;
+import com.steven.ai.vectorstore.RetrievalCache;
+import com.steven.ai.vectorstore.SegmentedVectorStore;
 import io.micrometer.observation.ObservationRegistry;
 import org.springframework.ai.autoconfigure.openai.OpenAiChatProperties;
 import org.springframework.ai.autoconfigure.openai.OpenAiConnectionProperties;
+import org.springframework.ai.autoconfigure.openai.OpenAiEmbeddingProperties;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.client.advisor.MessageChatMemoryAdvisor;
 import org.springframework.ai.chat.client.advisor.QuestionAnswerAdvisor;
 import org.springframework.ai.chat.client.advisor.SimpleLoggerAdvisor;
 import org.springframework.ai.chat.memory.ChatMemory;
-import org.springframework.ai.chat.memory.InMemoryChatMemory;
+import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.chat.observation.ChatModelObservationConvention;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.embedding.EmbeddingModel;
 import org.springframework.ai.model.tool.ToolCallingChatOptions;
 import org.springframework.ai.model.SimpleApiKey;
 import org.springframework.ai.model.tool.ToolCallingManager;
+import org.springframework.ai.ollama.OllamaChatModel;
+import org.springframework.ai.ollama.api.OllamaOptions;
 import org.springframework.ai.openai.OpenAiChatModel;
 import org.springframework.ai.openai.OpenAiEmbeddingModel;
 import org.springframework.ai.openai.api.OpenAiApi;
 import org.springframework.ai.vectorstore.SearchRequest;
-import org.springframework.ai.vectorstore.SimpleVectorStore;
 import org.springframework.ai.vectorstore.VectorStore;
 import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.retry.support.RetryTemplate;
 import org.springframework.util.CollectionUtils;
 import org.springframework.util.StringUtils;
@@ -34,39 +53,156 @@ import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.ai.openai.OpenAiChatOptions;
 
 
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 @Configuration
+@EnableConfigurationProperties({VectorStoreProperties.class, EmbeddingProperties.class, IngestionProperties.class, ChatMemoryProperties.class})
 public class CommonConfiguration {
 
+    //会话记忆的每次变更追加到日志，由 InMemoryChatHistoryRepository 负责重放与定期快照；空闲的会话写入磁盘，访问时载回
+    @Bean(destroyMethod = "close")
+    @Primary
+    public ConcurrentChatMemory chatMemory(ChatMemoryProperties properties) {
+        ChatMemoryProperties.Tiered tiered = properties.getTiered();
+        if (!tiered.isEnabled()) {
+            return new ConcurrentChatMemory();
+        }
+        return new ConcurrentChatMemory(Path.of(tiered.getSpillDirectory()),
+                TimeUnit.SECONDS.toMillis(tiered.getIdleSeconds()),
+                tiered.getMaxHeapMb() * 1024L * 1024L,
+                TimeUnit.SECONDS.toMillis(tiered.getSweepIntervalSeconds()));
+    }
+
+    //较早的对话在后台压缩成滚动摘要，发给模型的是“摘要 + 最近的原始消息”；完整历史仍保存在 chatMemory 中
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(prefix = "chat-memory.summary", name = "enabled", havingValue = "true", matchIfMissing = true)
+    public SummarizingChatMemory summarizingChatMemory(ConcurrentChatMemory chatMemory,
+                                                       ChatMemoryProperties properties,
+                                                       ObjectProvider<OllamaChatModel> ollamaChatModel,
+                                                       OpenAiChatModel openAiChatModel) {
+        ChatMemoryProperties.Summary summary = properties.getSummary();
+        ChatModel summarizer;
+        ChatOptions options = null;
+        if (summary.getProvider() == ChatMemoryProperties.Provider.OLLAMA) {
+            summarizer = ollamaChatModel.getObject();
+            if (StringUtils.hasText(summary.getModel())) {
+                options = OllamaOptions.builder().model(summary.getModel()).build();
+            }
+        } else {
+            summarizer = openAiChatModel;
+            if (StringUtils.hasText(summary.getModel())) {
+                options = OpenAiChatOptions.builder().model(summary.getModel()).build();
+            }
+        }
+        SummarizingChatMemory summarizing = new SummarizingChatMemory(chatMemory, summarizer, options, summary.getTriggerTokens(),
+                summary.getKeepRecentMessages(), summary.getMaxSummaryChars(), summary.getThreads());
+        // 历史记录接口直接删除底层会话，摘要随之丢弃
+        chatMemory.addDeleteListener(summarizing::evict);
+        return summarizing;
+    }
+
+    //向量化结果按内容哈希落盘缓存，重复上传的文件不再重复调用 embedding 接口
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(prefix = "embedding.cache", name = "enabled", havingValue = "true", matchIfMissing = true)
+    public EmbeddingCache embeddingCache(EmbeddingProperties properties) {
+        EmbeddingProperties.Cache cache = properties.getCache();
+        return new EmbeddingCache(Path.of(cache.getFile()), cache.getMaxEntries());
+    }
+
+    //并发问答的问题向量化合并为批量请求；作为 bean 注册，关闭时停止派发线程并释放等待中的调用方
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(prefix = "embedding.batching", name = "enabled", havingValue = "true", matchIfMissing = true)
+    public BatchingEmbeddingModel batchingEmbeddingModel(OpenAiEmbeddingModel openAiEmbeddingModel, EmbeddingProperties properties) {
+        EmbeddingProperties.Batching batching = properties.getBatching();
+        return new BatchingEmbeddingModel(openAiEmbeddingModel, batching.getMaxBatchSize(), batching.getMaxWaitMillis(),
+                batching.getConcurrency(), batching.getMaxRequestsPerSecond(), batching.getTimeoutMillis());
+    }
+
+    //PDF 问答的检索缓存：同一文件上的重复提问不再重复向量化和扫描，文件的文档变化时自动失效
     @Bean
-    public ChatMemory chatMemory() {
-        return new InMemoryChatMemory();
+    @ConditionalOnProperty(prefix = "vector-store.retrieval-cache", name = "enabled", havingValue = "true", matchIfMissing = true)
+    public RetrievalCache retrievalCache(VectorStoreProperties properties) {
+        VectorStoreProperties.RetrievalCache cache = properties.getRetrievalCache();
+        return new RetrievalCache(cache.getMaxEntries(), TimeUnit.SECONDS.toMillis(cache.getTtlSeconds()));
     }
 
-    //直接向量数据库，需要手动配置vectorStore接口
+    //直接向量数据库，需要手动配置vectorStore接口；通过 vector-store.type 选择平铺扫描、HNSW 图索引或分段索引，vector-store.hybrid 开启关键词混合检索
     @Bean
-    public VectorStore vectorStore(OpenAiEmbeddingModel embeddingModel) {
-        return SimpleVectorStore.builder(embeddingModel).build();
+    public VectorStore vectorStore(OpenAiEmbeddingModel openAiEmbeddingModel,
+                                   ObjectProvider<BatchingEmbeddingModel> batchingEmbeddingModel,
+                                   OpenAiEmbeddingProperties embeddingProperties,
+                                   ObjectProvider<EmbeddingCache> embeddingCache,
+                                   ObjectProvider<RetrievalCache> retrievalCache,
+                                   VectorStoreProperties properties,
+                                   @Value("${spring.ai.openai.embedding.options.dimensions:1024}") int dimensions) {
+        // 缓存未命中的文本才会进入合并队列
+        EmbeddingModel embeddingModel = batchingEmbeddingModel.getIfAvailable();
+        if (embeddingModel == null) {
+            embeddingModel = openAiEmbeddingModel;
+        }
+        EmbeddingCache cache = embeddingCache.getIfAvailable();
+        if (cache != null) {
+            embeddingModel = new CachingEmbeddingModel(embeddingModel, cache,
+                    embeddingProperties.getOptions().getModel(), dimensions);
+        }
+        VectorStoreProperties.Hybrid hybrid = properties.getHybrid();
+        LexicalIndex lexicalIndex = hybrid.isEnabled()
+                ? new LexicalIndex(hybrid.getCandidateFactor(), hybrid.getKeywordMaxTerms())
+                : null;
+        if (properties.getType() == VectorStoreProperties.Type.HNSW) {
+            VectorStoreProperties.Hnsw hnsw = properties.getHnsw();
+            return HnswVectorStore.builder(embeddingModel)
+                    .dimensions(dimensions)
+                    .m(hnsw.getM())
+                    .efConstruction(hnsw.getEfConstruction())
+                    .efSearch(hnsw.getEfSearch())
+                    .retrievalCache(retrievalCache.getIfAvailable())
+                    .lexicalIndex(lexicalIndex)
+                    .build();
+        }
+        if (properties.getType() == VectorStoreProperties.Type.SEGMENTED) {
+            VectorStoreProperties.Segmented segmented = properties.getSegmented();
+            return SegmentedVectorStore.builder(embeddingModel)
+                    .dimensions(dimensions)
+                    .segmentSize(segmented.getSegmentSize())
+                    .mergeFactor(segmented.getMergeFactor())
+                    .prefixDimensions(segmented.getPrefixDimensions())
+                    .prefixCandidateFactor(segmented.getPrefixCandidateFactor())
+                    .retrievalCache(retrievalCache.getIfAvailable())
+                    .lexicalIndex(lexicalIndex)
+                    .build();
+        }
+        VectorStoreProperties.Flat flat = properties.getFlat();
+        FlatVectorStore.FlatVectorStoreBuilder builder = FlatVectorStore.builder(embeddingModel)
+                .dimensions(dimensions)
+                .rescoreFactor(flat.getRescoreFactor())
+                .retrievalCache(retrievalCache.getIfAvailable())
+                .lexicalIndex(lexicalIndex);
+        if (flat.getQuantization() == VectorStoreProperties.Quantization.INT8) {
+            builder.quantized(Path.of(flat.getRawVectorFile()));
+        }
+        return builder.build();
     }
 
     //ai聊天机器人（通用聊天，不携带 Agent 工具）
     @Bean
-    public ChatClient chatClient(AlibabaOpenAiChatModel model, ChatMemory chatMemory) {
+    public ChatClient chatClient(AlibabaOpenAiChatModel model, ChatMemory chatMemory, ObjectProvider<SummarizingChatMemory> summarizingChatMemory, ChatMemoryProperties memoryProperties) {
         return ChatClient
                 .builder(model)
                 .defaultOptions(OpenAiChatOptions.builder().model("qwen-omni-turbo").build())
                 .defaultSystem("你是一个热心、专业、可靠的智能助手，你的名字叫67助手。请以67助手的身份与语气回答问题，简洁、准确、可执行。若用户在当前会话(由 chatId 标识)中主动提供了姓名/称呼，请在本会话内记住该称呼并据此称呼对方；当用户问‘我是谁/你记得我吗’，应依据会话上下文直接回答，如：‘你是{姓名}’，不要以隐私政策为由拒绝；仅在本次会话范围内生效，不跨会话保存。")
                 .defaultAdvisors(
                         new SimpleLoggerAdvisor(),
-                        new MessageChatMemoryAdvisor(chatMemory)
+                        new MessageChatMemoryAdvisor(contextMemory(chatMemory, summarizingChatMemory, memoryProperties, "chat"))
                 )
                 .build();
     }
 
     // 旅游向导智能 Agent（携带 AmapTools，并开启工具调用）
     @Bean
-    public ChatClient travelAgentChatClient(AlibabaOpenAiChatModel model, ChatMemory chatMemory, com.steven.ai.tools.AmapTools amapTools) {
+    public ChatClient travelAgentChatClient(AlibabaOpenAiChatModel model, ChatMemory chatMemory, ObjectProvider<SummarizingChatMemory> summarizingChatMemory, ChatMemoryProperties memoryProperties, com.steven.ai.tools.AmapTools amapTools) {
         return ChatClient
                 .builder(model)
                 .defaultOptions(ToolCallingChatOptions.builder()
@@ -79,7 +215,7 @@ public class CommonConfiguration {
                         + "4) 对不确定信息不要编造，无法查询时明确说明原因并给出可选方案。")
                 .defaultAdvisors(
                         new SimpleLoggerAdvisor(),
-                        new MessageChatMemoryAdvisor(chatMemory)
+                        new MessageChatMemoryAdvisor(contextMemory(chatMemory, summarizingChatMemory, memoryProperties, "travel"))
                 )
                 .defaultTools(amapTools)
                 .build();
@@ -89,26 +225,26 @@ public class CommonConfiguration {
 
     //智能客服
     @Bean
-    public ChatClient serviceChatClient(AlibabaOpenAiChatModel model, ChatMemory chatMemory, CourseTools courseTools) {
+    public ChatClient serviceChatClient(AlibabaOpenAiChatModel model, ChatMemory chatMemory, ObjectProvider<SummarizingChatMemory> summarizingChatMemory, ChatMemoryProperties memoryProperties, CourseTools courseTools) {
         return ChatClient
                 .builder(model)
                 .defaultSystem(SystemConstants.SERVICE_SYSTEM_PROMPT)
                 .defaultAdvisors(
                         new SimpleLoggerAdvisor(),
-                        new MessageChatMemoryAdvisor(chatMemory)
+                        new MessageChatMemoryAdvisor(contextMemory(chatMemory, summarizingChatMemory, memoryProperties, "service"))
                 )
                 .defaultTools(courseTools)//传入对应的toll
                 .build();
     }
 
     @Bean
-    public ChatClient pdfChatClient(OpenAiChatModel model, ChatMemory chatMemory, VectorStore vectorStore) {
+    public ChatClient pdfChatClient(OpenAiChatModel model, ChatMemory chatMemory, ObjectProvider<SummarizingChatMemory> summarizingChatMemory, ChatMemoryProperties memoryProperties, VectorStore vectorStore) {
         return ChatClient
                 .builder(model)
                 .defaultSystem("请根据上下文回答问题，遇到上下文没有的问题，不要随意编造。")
                 .defaultAdvisors(
                         new SimpleLoggerAdvisor(),
-                        new MessageChatMemoryAdvisor(chatMemory),
+                        new MessageChatMemoryAdvisor(contextMemory(chatMemory, summarizingChatMemory, memoryProperties, "pdf")),
                         new QuestionAnswerAdvisor(
                                 vectorStore,
                                 SearchRequest.builder()
@@ -120,6 +256,15 @@ public class CommonConfiguration {
                 .build();
     }
 
+    // 各业务的会话共用一份完整的会话记忆，发给模型时先换上滚动摘要，再按各自的 token 预算截取最近的消息
+    private static ChatMemory contextMemory(ChatMemory chatMemory, ObjectProvider<SummarizingChatMemory> summarizingChatMemory,
+                                            ChatMemoryProperties properties, String type) {
+        SummarizingChatMemory summarizing = summarizingChatMemory.getIfAvailable();
+        ChatMemory memory = summarizing != null ? summarizing : chatMemory;
+        ChatMemoryProperties.Window window = properties.getWindow();
+        return window.isEnabled() ? new TokenWindowChatMemory(memory, window.maxTokensOf(type)) : memory;
+    }
+
     @Bean
     public AlibabaOpenAiChatModel alibabaOpenAiChatModel(OpenAiConnectionProperties commonProperties, OpenAiChatProperties chatProperties, ObjectProvider<RestClient.Builder> restClientBuilderProvider, ObjectProvider<WebClient.Builder> webClientBuilderProvider, ToolCallingManager toolCallingManager, RetryTemplate retryTemplate, ResponseErrorHandler responseErrorHandler, ObjectProvider<ObservationRegistry> observationRegistry, ObjectProvider<ChatModelObservationConvention> observationConvention) {
         String baseUrl = StringUtils.hasText(chatProperties.getBaseUrl()) ? chatProperties.getBaseUrl() : commonProperties.getBaseUrl();
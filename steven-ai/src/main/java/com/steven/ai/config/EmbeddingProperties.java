@@ -0,0 +1,60 @@
+package com.steven.ai.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * embedding 相关配置，对应 application.yaml 中的 embedding 节点
+ */
+@Data
+@ConfigurationProperties(prefix = "embedding")
+public class EmbeddingProperties {
+
+    private Cache cache = new Cache();
+
+    private Batching batching = new Batching();
+
+    @Data
+    public static class Cache {
+        /**
+         * 是否启用内容哈希缓存
+         */
+        private boolean enabled = true;
+        /**
+         * 缓存数据文件
+         */
+        private String file = "embedding-cache.bin";
+        /**
+         * 缓存条目上限，超出后淘汰最久未使用的条目
+         */
+        private int maxEntries = 20000;
+    }
+
+    @Data
+    public static class Batching {
+        /**
+         * 是否合并并发的小请求（问答时的问题向量化）
+         */
+        private boolean enabled = true;
+        /**
+         * 合并后单次请求的文本条数上限（DashScope text-embedding-v3 单次最多 10 条）
+         */
+        private int maxBatchSize = 10;
+        /**
+         * 第一条请求到达后最多等待多久（毫秒）再发出
+         */
+        private long maxWaitMillis = 5;
+        /**
+         * 同时在途的合并请求数
+         */
+        private int concurrency = 4;
+        /**
+         * 每秒最多发出的合并请求数，0 表示不限
+         */
+        private int maxRequestsPerSecond = 0;
+        /**
+         * 调用方等待合并请求结果的最长时间（毫秒）
+         */
+        private long timeoutMillis = 60000;
+    }
+}
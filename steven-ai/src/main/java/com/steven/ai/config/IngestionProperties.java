@@ -0,0 +1,61 @@
+package com.steven.ai.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * PDF 导入流水线配置，对应 application.yaml 中的 ingestion 节点
+ */
+@Data
+@ConfigurationProperties(prefix = "ingestion")
+public class IngestionProperties {
+
+    /**
+     * 每批最多的文本条数（DashScope text-embedding-v3 单次最多 10 条）
+     */
+    private int maxBatchSize = 10;
+    /**
+     * 每批估算 token 数上限
+     */
+    private int maxBatchTokens = 8000;
+    /**
+     * 同时在途的 embedding 请求数
+     */
+    private int concurrency = 4;
+    /**
+     * 单批最大尝试次数（含第一次）
+     */
+    private int maxAttempts = 3;
+    /**
+     * 重试的初始退避时间（毫秒），之后每次翻倍
+     */
+    private long retryBackoffMillis = 500;
+    /**
+     * 后台导入任务的工作线程数
+     */
+    private int workers = 2;
+    /**
+     * 排队等待的导入任务上限，超出时直接拒绝上传
+     */
+    private int queueCapacity = 16;
+    /**
+     * 已结束的任务保留多久（分钟），过期后状态查询返回不存在
+     */
+    private int jobRetentionMinutes = 60;
+    /**
+     * PDF 解析线程数，0 表示使用 CPU 核数
+     */
+    private int extractionThreads = 0;
+    /**
+     * 解析线程每次领取的页数
+     */
+    private int extractionChunkPages = 8;
+    /**
+     * 已解析、待向量化的页面队列容量
+     */
+    private int extractionQueueCapacity = 64;
+    /**
+     * 记录已完整导入的文件（按内容哈希命名），再次上传同一文件时跳过导入
+     */
+    private String indexedFile = "chat-pdf.indexed";
+}
@@ -0,0 +1,163 @@
+package com.steven.ai.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 本地向量库配置，对应 application.yaml 中的 vector-store 节点
+ */
+@Data
+@ConfigurationProperties(prefix = "vector-store")
+public class VectorStoreProperties {
+
+    /**
+     * 索引类型：flat 为精确的全量扫描，hnsw 为近似最近邻图索引，segmented 为分段写时复制的精确扫描（导入不阻塞检索）
+     */
+    private Type type = Type.FLAT;
+
+    private Flat flat = new Flat();
+
+    private Hnsw hnsw = new Hnsw();
+
+    private Segmented segmented = new Segmented();
+
+    private RetrievalCache retrievalCache = new RetrievalCache();
+
+    private Hybrid hybrid = new Hybrid();
+
+    private Wal wal = new Wal();
+
+    private Gc gc = new Gc();
+
+    public enum Type {
+        FLAT, HNSW, SEGMENTED
+    }
+
+    public enum Quantization {
+        NONE, INT8
+    }
+
+    @Data
+    public static class Flat {
+        /**
+         * 向量在内存中的存储方式：none 为 float，int8 为标量量化（内存约为 1/4，候选用全精度向量重排）
+         */
+        private Quantization quantization = Quantization.NONE;
+        /**
+         * 量化模式下参与重排的候选数 = topK * rescoreFactor
+         */
+        private int rescoreFactor = 4;
+        /**
+         * 量化模式下尚未写入段文件的全精度向量存放位置
+         */
+        private String rawVectorFile = "chat-pdf.raw";
+    }
+
+    @Data
+    public static class Hnsw {
+        /**
+         * 每个节点的邻居数上限（第 0 层为 2 * m）
+         */
+        private int m = 16;
+        /**
+         * 建图时的候选束宽度
+         */
+        private int efConstruction = 200;
+        /**
+         * 检索时的候选束宽度
+         */
+        private int efSearch = 64;
+        /**
+         * 启动加载后用于估算召回率的抽样查询数，0 表示不统计
+         */
+        private int recallSamples = 100;
+    }
+
+    @Data
+    public static class Segmented {
+        /**
+         * 活动段写满多少行后封存为只读段
+         */
+        private int segmentSize = 1024;
+        /**
+         * 同一大小层的段凑满多少个时由后台合并
+         */
+        private int mergeFactor = 4;
+        /**
+         * 两阶段检索的短向量维度（向量前若干维截断后重新归一化），0 表示只做全维扫描
+         */
+        private int prefixDimensions = 256;
+        /**
+         * 两阶段检索时参与全维重排的候选数 = topK * prefixCandidateFactor
+         */
+        private int prefixCandidateFactor = 8;
+        /**
+         * 启动加载后用于估算两阶段检索召回率的抽样查询数，0 表示不统计
+         */
+        private int recallSamples = 100;
+    }
+
+    @Data
+    public static class RetrievalCache {
+        /**
+         * 是否缓存 (文件名, 问题) 的问题向量与检索结果
+         */
+        private boolean enabled = true;
+        /**
+         * 最多缓存的问题数，超出后淘汰最久未使用的
+         */
+        private int maxEntries = 1000;
+        /**
+         * 缓存条目存活时间（秒）
+         */
+        private long ttlSeconds = 600;
+    }
+
+    @Data
+    public static class Hybrid {
+        /**
+         * 是否在向量检索之外维护 BM25 关键词索引，并用 RRF 融合两路结果
+         */
+        private boolean enabled = true;
+        /**
+         * 两路各取 topK * candidateFactor 个候选参与融合
+         */
+        private int candidateFactor = 4;
+        /**
+         * 问题切分后的词数不超过该值且关键词结果全部命中所有词时，只走关键词检索，不调用 embedding
+         */
+        private int keywordMaxTerms = 4;
+    }
+
+    @Data
+    public static class Wal {
+        /**
+         * 是否把每次写入、删除追加到写前日志；关闭时只在应用正常退出时整体保存
+         */
+        private boolean enabled = true;
+        /**
+         * 日志文件名前缀，实际文件为 file.{代}
+         */
+        private String file = "chat-pdf.wal";
+        /**
+         * 日志累计超过该大小（MB）时压实进快照
+         */
+        private int compactThresholdMb = 64;
+        /**
+         * 检查是否需要压实的间隔（秒）
+         */
+        private int compactIntervalSeconds = 60;
+    }
+
+    @Data
+    public static class Gc {
+        /**
+         * 是否在后台清理不再被任何会话引用的文件及其文档
+         */
+        private boolean enabled = true;
+        /**
+         * 清理间隔（秒）
+         */
+        private int intervalSeconds = 300;
+    }
+}
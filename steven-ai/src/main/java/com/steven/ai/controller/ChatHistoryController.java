@@ -1,15 +1,26 @@
 package com.steven.ai.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.steven.ai.entity.vo.ChatIdPageVO;
+import com.steven.ai.entity.vo.MessagePageVO;
 import com.steven.ai.entity.vo.MessageVO;
+import com.steven.ai.memory.ConcurrentChatMemory;
 import com.steven.ai.repository.ChatHistoryRepository;
+import com.steven.ai.repository.FileRepository;
 import lombok.RequiredArgsConstructor;
-import org.springframework.ai.chat.memory.ChatMemory;
 import org.springframework.ai.chat.messages.Message;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
 
@@ -20,13 +31,40 @@ public class ChatHistoryController {
 
     private final ChatHistoryRepository chatHistoryRepository;
 
-    private final ChatMemory chatMemory;
+    private final ConcurrentChatMemory chatMemory;
+
+    private final FileRepository fileRepository;
+
+    private final ObjectMapper objectMapper;
+
+    // 单页会话ID数、消息数上限
+    private static final int MAX_PAGE_SIZE = 200;
+
+    // 流式输出时每次从会话记忆读取、刷出的消息数
+    private static final int STREAM_CHUNK_SIZE = 256;
 
     @GetMapping("/{type}")
     public List<String> getChatIds(@PathVariable("type") String type) {
         return chatHistoryRepository.getChatIds(type);
     }
 
+    /**
+     * 分页获取会话ID，按创建时间从新到旧；下一页传入上一页返回的 nextCursor
+     */
+    @GetMapping(value = "/{type}", params = "limit")
+    public ChatIdPageVO getChatIds(@PathVariable("type") String type,
+                                   @RequestParam(value = "cursor", required = false) String cursor,
+                                   @RequestParam("limit") int limit) {
+        if (limit <= 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit 必须大于 0");
+        }
+        try {
+            return chatHistoryRepository.getChatIds(type, cursor, Math.min(limit, MAX_PAGE_SIZE));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+
     @GetMapping("/{type}/{chatId}")
     public List<MessageVO> getChatHistory(@PathVariable("type") String type, @PathVariable("chatId") String chatId) {
         List<Message> messages = chatMemory.get(chatId, Integer.MAX_VALUE);
@@ -36,13 +74,80 @@ public class ChatHistoryController {
         return messages.stream().map(MessageVO::new).toList();
     }
 
+    /**
+     * 分页获取会话消息，从最新的一页开始；下一页传入上一页返回的 nextCursor 获取更早的消息。
+     * 游标为本页第一条消息在会话中的位置，会话只追加消息，已返回的位置不会变化
+     */
+    @GetMapping(value = "/{type}/{chatId}", params = "limit")
+    public MessagePageVO getChatHistory(@PathVariable("type") String type, @PathVariable("chatId") String chatId,
+                                        @RequestParam(value = "cursor", required = false) String cursor,
+                                        @RequestParam("limit") int limit) {
+        if (limit <= 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit 必须大于 0");
+        }
+        int end = Integer.MAX_VALUE;
+        if (StringUtils.hasText(cursor)) {
+            try {
+                end = Integer.parseInt(cursor);
+            } catch (NumberFormatException e) {
+                end = -1;
+            }
+            if (end < 0) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor: " + cursor);
+            }
+        }
+        end = Math.min(end, chatMemory.size(chatId));
+        int start = Math.max(0, end - Math.min(limit, MAX_PAGE_SIZE));
+        // 只读取本页的区间
+        List<Message> messages = chatMemory.range(chatId, start, end);
+        return new MessagePageVO(messages.stream().map(MessageVO::new).toList(),
+                start > 0 && !messages.isEmpty() ? String.valueOf(start) : null);
+    }
+
+    /**
+     * 以 NDJSON 流式输出完整会话，每行一条消息，按时间从旧到新。
+     * 输出请求开始时已有的消息，按区间分批读取并逐批写出，不在内存中拼出整个响应
+     */
+    @GetMapping(value = "/{type}/{chatId}/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public StreamingResponseBody streamChatHistory(@PathVariable("type") String type, @PathVariable("chatId") String chatId) {
+        int size = chatMemory.size(chatId);
+        return out -> {
+            JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            // 每条消息后自行换行，不使用默认的空格分隔
+            generator.setRootValueSeparator(null);
+            for (int from = 0; from < size; from += STREAM_CHUNK_SIZE) {
+                List<Message> messages = chatMemory.range(chatId, from, Math.min(size, from + STREAM_CHUNK_SIZE));
+                // 输出期间会话被删除
+                if (messages.isEmpty()) {
+                    break;
+                }
+                for (Message message : messages) {
+                    objectMapper.writeValue(generator, new MessageVO(message));
+                    generator.writeRaw('\n');
+                }
+                generator.flush();
+            }
+            generator.close();
+        };
+    }
+
     @DeleteMapping("/{type}/{chatId}")
     public void deleteChat(@PathVariable("type") String type, @PathVariable("chatId") String chatId) {
         chatHistoryRepository.delete(type, chatId);
+        // 只有 PDF 会话关联文件：释放会话对文件的引用，不再被引用的文件由后台清理
+        if ("pdf".equals(type)) {
+            fileRepository.delete(chatId);
+        }
     }
 
     @DeleteMapping("/{type}")
     public void clearType(@PathVariable("type") String type)     {
+        List<String> chatIds = List.copyOf(chatHistoryRepository.getChatIds(type));
         chatHistoryRepository.clear(type);
+        // 其他类型的会话id可能与 PDF 会话重复，不能释放 PDF 会话的文件
+        if ("pdf".equals(type)) {
+            chatIds.forEach(fileRepository::delete);
+        }
     }
 }
@@ -1,17 +1,15 @@
 package com.steven.ai.controller;
 
+import com.steven.ai.entity.vo.IngestionJobVO;
 import com.steven.ai.entity.vo.Result;
+import com.steven.ai.ingestion.IngestionJob;
+import com.steven.ai.ingestion.IngestionJobService;
 import com.steven.ai.repository.ChatHistoryRepository;
 import com.steven.ai.repository.FileRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.client.advisor.QuestionAnswerAdvisor;
-import org.springframework.ai.document.Document;
-import org.springframework.ai.reader.ExtractedTextFormatter;
-import org.springframework.ai.reader.pdf.PagePdfDocumentReader;
-import org.springframework.ai.reader.pdf.config.PdfDocumentReaderConfig;
-import org.springframework.ai.vectorstore.VectorStore;
 import org.springframework.core.io.Resource;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -22,8 +20,8 @@ import reactor.core.publisher.Flux;
 import java.io.IOException;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
-import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.RejectedExecutionException;
 
 import static org.springframework.ai.chat.client.advisor.AbstractChatMemoryAdvisor.CHAT_MEMORY_CONVERSATION_ID_KEY;
 import static org.springframework.ai.chat.client.advisor.QuestionAnswerAdvisor.FILTER_EXPRESSION;
@@ -36,7 +34,7 @@ public class PdfController {
 
     private final FileRepository fileRepository;
 
-    private final VectorStore vectorStore;
+    private final IngestionJobService ingestionJobService;
 
     private final ChatClient pdfChatClient;
 
@@ -50,9 +48,24 @@ public class PdfController {
             // 文件不存在，不回答
             throw new RuntimeException("会话文件不存在！");
         }
-        // 2.保存会话id
+        // 2.索引未完成时不检索，避免基于不完整的索引回答
+        IngestionJob job = ingestionJobService.getLatestJob(file.getFilename());
+        if (job == null && !ingestionJobService.isIndexed(file.getFilename())) {
+            // 任务记录已过期清理或随重启丢失，而文件没有导入完成（例如导入中途重启），重新提交导入
+            try {
+                job = ingestionJobService.submit(chatId, file);
+            } catch (RejectedExecutionException e) {
+                return Flux.just("文档尚未索引，当前导入任务过多，请稍后再试。");
+            }
+        }
+        if (job != null && job.getState() != IngestionJob.State.SUCCEEDED) {
+            return Flux.just(job.getState() == IngestionJob.State.FAILED
+                    ? "文档索引失败，请重新上传。"
+                    : "文档仍在索引中（" + job.getIndexedPages() + "/" + job.getTotalPages() + " 页），请稍后再试。");
+        }
+        // 3.保存会话id
         chatHistoryRepository.save("pdf", chatId);
-        // 3.请求模型
+        // 4.请求模型
         return pdfChatClient.prompt()
                 .user(prompt)
                 .advisors(a -> a.param(CHAT_MEMORY_CONVERSATION_ID_KEY, chatId))
@@ -76,15 +89,30 @@ public class PdfController {
             if (!success) {
                 return Result.fail("保存文件失败！");
             }
-            // 3.写入向量库
-            this.writeToVectorStore(file.getResource());
-            return Result.ok();
+            // 3.提交后台导入任务，立即返回任务id
+            IngestionJob job = ingestionJobService.submit(chatId, fileRepository.getFile(chatId));
+            return Result.ok(job.getId());
+        } catch (RejectedExecutionException e) {
+            log.warn("Ingestion queue is full, reject upload for chat {}", chatId);
+            return Result.fail("当前上传任务过多，请稍后再试！");
         } catch (Exception e) {
             log.error("Failed to upload PDF.", e);
             return Result.fail("上传文件失败！");
         }
     }
 
+    /**
+     * 导入任务进度
+     */
+    @GetMapping("/upload/status/{jobId}")
+    public ResponseEntity<IngestionJobVO> uploadStatus(@PathVariable("jobId") String jobId) {
+        IngestionJob job = ingestionJobService.getJob(jobId);
+        if (job == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(new IngestionJobVO(job));
+    }
+
     /**
      * 文件下载
      */
@@ -95,27 +123,12 @@ public class PdfController {
         if (!resource.exists()) {
             return ResponseEntity.notFound().build();
         }
-        // 2.文件名编码，写入响应头
-        String filename = URLEncoder.encode(Objects.requireNonNull(resource.getFilename()), StandardCharsets.UTF_8);
+        // 2.文件名编码，写入响应头；本地按内容哈希存放，下载时使用上传时的原始文件名
+        String filename = URLEncoder.encode(Objects.requireNonNull(fileRepository.getFilename(chatId)), StandardCharsets.UTF_8);
         // 3.返回文件
         return ResponseEntity.ok()
                 .contentType(MediaType.APPLICATION_OCTET_STREAM)
                 .header("Content-Disposition", "attachment; filename=\"" + filename + "\"")
                 .body(resource);
     }
-
-    private void writeToVectorStore(Resource resource) {
-        // 1.创建PDF的读取器
-        PagePdfDocumentReader reader = new PagePdfDocumentReader(
-                resource, // 文件源
-                PdfDocumentReaderConfig.builder()
-                        .withPageExtractedTextFormatter(ExtractedTextFormatter.defaults())
-                        .withPagesPerDocument(1) // 每1页PDF作为一个Document
-                        .build()
-        );
-        // 2.读取PDF文档，拆分为Document
-        List<Document> documents = reader.read();
-        // 3.写入向量库
-        vectorStore.add(documents);
-    }
 }
\ No newline at end of file
@@ -0,0 +1,273 @@
+package com.steven.ai.embedding;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptions;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.embedding.EmbeddingResponseMetadata;
+import org.springframework.util.Assert;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 合并并发小请求的 EmbeddingModel 装饰器。
+ * <p>
+ * 并发的问答请求各自只向量化一句问题，逐个调用远程接口时请求数随并发线性增长。
+ * 这里把短时间内到达的小请求放入队列，由派发线程等待至多 maxWait 或凑满 maxBatchSize 条文本后合成一次请求，
+ * 结果按顺序拆回给各个等待的调用方；模型、维度不同的请求不会合并。
+ * 派发受同时在途请求数和每秒请求数限制，限流等待期间到达的请求会并入下一批，请求越密集批次越大。
+ * <p>
+ * 文本数不少于 maxBatchSize 的请求（例如导入流水线已分好的批次）直接转发，不参与合并。
+ */
+@Slf4j
+public class BatchingEmbeddingModel implements EmbeddingModel, Closeable {
+
+    private final EmbeddingModel delegate;
+
+    private final int maxBatchSize;
+
+    private final long maxWaitNanos;
+
+    // 两次请求之间的最小间隔，0 表示不限速
+    private final long minIntervalNanos;
+
+    private final long timeoutMillis;
+
+    private final Semaphore inFlight;
+
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+
+    // 尚未拿到结果的调用（排队、合并中或已发出），关闭时全部释放
+    private final Set<Pending> outstanding = ConcurrentHashMap.newKeySet();
+
+    private final Thread dispatcher;
+
+    private final ExecutorService senders;
+
+    private volatile boolean closed;
+
+    private long nextSendAt;
+
+    /**
+     * @param delegate 实际调用远程接口的模型
+     * @param maxBatchSize 合并后单次请求的文本条数上限
+     * @param maxWaitMillis 第一条请求到达后最多等待多久再发出
+     * @param concurrency 同时在途的合并请求数
+     * @param maxRequestsPerSecond 每秒最多发出的合并请求数，0 表示不限
+     * @param timeoutMillis 调用方等待合并请求结果的最长时间
+     */
+    public BatchingEmbeddingModel(EmbeddingModel delegate, int maxBatchSize, long maxWaitMillis, int concurrency,
+                                  int maxRequestsPerSecond, long timeoutMillis) {
+        Assert.isTrue(maxBatchSize > 0, "maxBatchSize must be greater than 0");
+        Assert.isTrue(maxWaitMillis >= 0, "maxWaitMillis must not be negative");
+        Assert.isTrue(concurrency > 0, "concurrency must be greater than 0");
+        Assert.isTrue(maxRequestsPerSecond >= 0, "maxRequestsPerSecond must not be negative");
+        Assert.isTrue(timeoutMillis > 0, "timeoutMillis must be greater than 0");
+        this.delegate = delegate;
+        this.maxBatchSize = maxBatchSize;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        this.minIntervalNanos = maxRequestsPerSecond == 0 ? 0 : TimeUnit.SECONDS.toNanos(1) / maxRequestsPerSecond;
+        this.timeoutMillis = timeoutMillis;
+        this.inFlight = new Semaphore(concurrency);
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.senders = Executors.newFixedThreadPool(concurrency, r -> {
+            Thread thread = new Thread(r, "embedding-batch-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.dispatcher = new Thread(this::dispatch, "embedding-batch-dispatcher");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        List<String> inputs = request.getInstructions();
+        if (inputs.isEmpty() || inputs.size() >= maxBatchSize || closed) {
+            return delegate.call(request);
+        }
+        Pending pending = new Pending(inputs, request.getOptions());
+        outstanding.add(pending);
+        queue.add(pending);
+        // 入队时恰好关闭，派发线程可能已不再处理队列
+        if (closed && queue.remove(pending)) {
+            outstanding.remove(pending);
+            return delegate.call(request);
+        }
+        List<float[]> vectors;
+        try {
+            vectors = pending.result.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // 还在队列中时撤回，已发出的批次结果到达后丢弃
+            queue.remove(pending);
+            throw new IllegalStateException("Timed out after " + timeoutMillis + " ms waiting for embedding batch", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for embedding batch", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            outstanding.remove(pending);
+        }
+        List<Embedding> embeddings = new ArrayList<>(vectors.size());
+        for (int i = 0; i < vectors.size(); i++) {
+            embeddings.add(new Embedding(vectors.get(i), i));
+        }
+        // 合并请求的用量无法拆分到单个调用方，这里不返回用量信息
+        return new EmbeddingResponse(embeddings, new EmbeddingResponseMetadata());
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return delegate.embed(document);
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        dispatcher.interrupt();
+        senders.shutdown();
+        queue.clear();
+        // 包括已发出、结果未返回的批次，调用方不再等待远程接口
+        IllegalStateException closedException = new IllegalStateException("Embedding batcher is closed");
+        outstanding.forEach(pending -> pending.result.completeExceptionally(closedException));
+    }
+
+    private void dispatch() {
+        // 与当前批次不能合并的请求留到下一批
+        Deque<Pending> carried = new ArrayDeque<>();
+        try {
+            while (!closed) {
+                Pending first = carried.isEmpty() ? queue.take() : carried.poll();
+                List<Pending> batch = new ArrayList<>();
+                batch.add(first);
+                int texts = first.inputs.size();
+                // 先合并上一批留下的请求，再等待新请求
+                for (Iterator<Pending> it = carried.iterator(); it.hasNext() && texts < maxBatchSize; ) {
+                    Pending next = it.next();
+                    if (first.compatibleWith(next) && texts + next.inputs.size() <= maxBatchSize) {
+                        it.remove();
+                        batch.add(next);
+                        texts += next.inputs.size();
+                    }
+                }
+                long deadline = System.nanoTime() + maxWaitNanos;
+                while (texts < maxBatchSize) {
+                    Pending next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    if (!first.compatibleWith(next) || texts + next.inputs.size() > maxBatchSize) {
+                        carried.add(next);
+                        if (carried.size() >= maxBatchSize) {
+                            break;
+                        }
+                        continue;
+                    }
+                    batch.add(next);
+                    texts += next.inputs.size();
+                }
+                throttle();
+                inFlight.acquire();
+                try {
+                    senders.execute(() -> send(batch));
+                } catch (RejectedExecutionException e) {
+                    inFlight.release();
+                    batch.forEach(pending -> pending.result.completeExceptionally(e));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        carried.forEach(pending -> pending.result.completeExceptionally(new IllegalStateException("Embedding batcher is closed")));
+    }
+
+    // 按每秒请求数限制控制两次发出之间的间隔
+    private void throttle() throws InterruptedException {
+        if (minIntervalNanos == 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (nextSendAt > now) {
+            TimeUnit.NANOSECONDS.sleep(nextSendAt - now);
+            now = nextSendAt;
+        }
+        nextSendAt = now + minIntervalNanos;
+    }
+
+    private void send(List<Pending> batch) {
+        try {
+            List<String> texts = new ArrayList<>();
+            batch.forEach(pending -> texts.addAll(pending.inputs));
+            EmbeddingResponse response = delegate.call(new EmbeddingRequest(texts, batch.get(0).options));
+            List<Embedding> results = response.getResults();
+            if (results.size() != texts.size()) {
+                throw new IllegalStateException("Embedding model returned " + results.size() + " results for " + texts.size() + " inputs");
+            }
+            log.debug("Embedding batch: {} callers, {} texts", batch.size(), texts.size());
+            int offset = 0;
+            for (Pending pending : batch) {
+                List<float[]> vectors = new ArrayList<>(pending.inputs.size());
+                for (int i = 0; i < pending.inputs.size(); i++) {
+                    vectors.add(results.get(offset + i).getOutput());
+                }
+                offset += pending.inputs.size();
+                pending.result.complete(vectors);
+            }
+        } catch (RuntimeException e) {
+            batch.forEach(pending -> pending.result.completeExceptionally(e));
+        } finally {
+            inFlight.release();
+        }
+    }
+
+    /**
+     * 一个等待合并的调用
+     */
+    private static final class Pending {
+
+        private final List<String> inputs;
+
+        private final EmbeddingOptions options;
+
+        private final CompletableFuture<List<float[]>> result = new CompletableFuture<>();
+
+        private Pending(List<String> inputs, EmbeddingOptions options) {
+            this.inputs = inputs;
+            this.options = options;
+        }
+
+        // 模型与维度相同的请求才能合成一次请求
+        private boolean compatibleWith(Pending other) {
+            return Objects.equals(model(), other.model()) && Objects.equals(dimensions(), other.dimensions());
+        }
+
+        private String model() {
+            return options == null ? null : options.getModel();
+        }
+
+        private Integer dimensions() {
+            return options == null ? null : options.getDimensions();
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.steven.ai.embedding;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptions;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.embedding.EmbeddingResponseMetadata;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * 带内容哈希缓存的 EmbeddingModel 装饰器。
+ * <p>
+ * 缓存 key 为 SHA-256(模型名, 维度, 归一化后的文本)，同一段文本无论来自哪个文件、哪次上传都只向远程模型请求一次；
+ * 一次批量请求中只把未命中的文本（去重后）转发给被装饰的模型。
+ */
+@Slf4j
+public class CachingEmbeddingModel implements EmbeddingModel {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final EmbeddingModel delegate;
+
+    private final EmbeddingCache cache;
+
+    private final String defaultModel;
+
+    private final int defaultDimensions;
+
+    /**
+     * @param delegate 实际调用远程接口的模型
+     * @param cache 缓存
+     * @param defaultModel 请求未指定模型时使用的模型名
+     * @param defaultDimensions 请求未指定维度时使用的维度
+     */
+    public CachingEmbeddingModel(EmbeddingModel delegate, EmbeddingCache cache, String defaultModel, int defaultDimensions) {
+        this.delegate = delegate;
+        this.cache = cache;
+        this.defaultModel = defaultModel;
+        this.defaultDimensions = defaultDimensions;
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        List<String> inputs = request.getInstructions();
+        EmbeddingOptions options = request.getOptions();
+        String model = options != null && options.getModel() != null ? options.getModel() : defaultModel;
+        int dimensions = options != null && options.getDimensions() != null ? options.getDimensions() : defaultDimensions;
+
+        // 1.逐条查缓存，未命中的按 key 去重
+        float[][] vectors = new float[inputs.size()][];
+        byte[][] keys = new byte[inputs.size()][];
+        Map<String, List<Integer>> missing = new LinkedHashMap<>();
+        for (int i = 0; i < inputs.size(); i++) {
+            keys[i] = key(model, dimensions, inputs.get(i));
+            vectors[i] = cache.get(keys[i]);
+            if (vectors[i] == null) {
+                missing.computeIfAbsent(HexFormat.of().formatHex(keys[i]), k -> new ArrayList<>()).add(i);
+            }
+        }
+
+        // 2.只把未命中的文本交给远程模型
+        EmbeddingResponseMetadata metadata = new EmbeddingResponseMetadata();
+        if (!missing.isEmpty()) {
+            List<List<Integer>> groups = new ArrayList<>(missing.values());
+            List<String> texts = groups.stream().map(group -> inputs.get(group.get(0))).toList();
+            EmbeddingResponse response = delegate.call(new EmbeddingRequest(texts, options));
+            List<Embedding> results = response.getResults();
+            if (results.size() != texts.size()) {
+                throw new IllegalStateException("Embedding model returned " + results.size() + " results for " + texts.size() + " inputs");
+            }
+            for (int j = 0; j < groups.size(); j++) {
+                float[] vector = results.get(j).getOutput();
+                List<Integer> group = groups.get(j);
+                cache.put(keys[group.get(0)], vector);
+                group.forEach(i -> vectors[i] = vector);
+            }
+            metadata = response.getMetadata();
+        }
+        log.debug("Embedding cache: {} inputs, {} sent to model", inputs.size(), missing.size());
+
+        List<Embedding> embeddings = new ArrayList<>(inputs.size());
+        for (int i = 0; i < inputs.size(); i++) {
+            embeddings.add(new Embedding(vectors[i], i));
+        }
+        return new EmbeddingResponse(embeddings, metadata);
+    }
+
+    /**
+     * 只对正文做向量化，不拼接元数据，这样不同文件中的相同页面可以共享缓存
+     */
+    @Override
+    public float[] embed(Document document) {
+        return embed(document.getText());
+    }
+
+    /**
+     * 问题向量化：命中缓存时直接返回，未命中时请求模型但不写入缓存。
+     * 用户问题很少与文档内容相同，写入只会挤掉文档的向量、撑大缓存文件；重复的问题由检索缓存命中
+     */
+    public float[] embedQuery(String text) {
+        float[] vector = cache.get(key(defaultModel, defaultDimensions, text));
+        return vector != null ? vector : delegate.embed(text);
+    }
+
+    @Override
+    public int dimensions() {
+        return defaultDimensions;
+    }
+
+    public EmbeddingCache getCache() {
+        return cache;
+    }
+
+    // 文本先做 NFKC 归一化并折叠空白，避免排版差异导致缓存失效
+    static String normalize(String text) {
+        String normalized = Normalizer.normalize(text == null ? "" : text, Normalizer.Form.NFKC);
+        return WHITESPACE.matcher(normalized).replaceAll(" ").trim();
+    }
+
+    private static byte[] key(String model, int dimensions, String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(String.valueOf(model).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(Integer.toString(dimensions).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            return digest.digest(normalize(text).getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package com.steven.ai.embedding;
+
+import com.steven.ai.utils.ExecutorUtils;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 落盘的 embedding 缓存。
+ * <p>
+ * 向量只保存在追加写的数据文件中，内存里仅保留 key -> 文件偏移的 LRU 索引，
+ * 条目数超过上限时淘汰最久未使用的索引项；文件中失效记录过多时由后台线程整体重写压实，写入方不等待。
+ * <pre>
+ * 记录格式：[32B key][int dimensions][dimensions 个小端 float]
+ * </pre>
+ */
+@Slf4j
+public class EmbeddingCache implements Closeable {
+
+    private static final int KEY_BYTES = 32;
+
+    private static final int RECORD_HEADER = KEY_BYTES + Integer.BYTES;
+
+    private final Path path;
+
+    private final int maxEntries;
+
+    private FileChannel channel;
+
+    // key(hex) -> 记录在文件中的偏移，按访问顺序排列
+    private final LinkedHashMap<String, Long> index;
+
+    // 文件中的记录总数（含已淘汰、已覆盖的）
+    private long records;
+
+    private long hits;
+
+    private long misses;
+
+    // 后台压实线程，同一时间最多一个压实任务
+    private final ExecutorService compactor;
+
+    private boolean compacting;
+
+    public EmbeddingCache(Path path, int maxEntries) {
+        this.path = path;
+        this.maxEntries = maxEntries;
+        this.index = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > EmbeddingCache.this.maxEntries;
+            }
+        };
+        this.compactor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "embedding-cache-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            replay();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open embedding cache file " + path, e);
+        }
+        // 启动时还没有调用方，直接压实
+        if (needsCompaction()) {
+            compact();
+        }
+        log.info("Embedding cache loaded from {}, entries = {}", path, index.size());
+    }
+
+    /**
+     * 查询缓存
+     * @param key 32 字节的内容哈希
+     * @return 命中时返回向量，否则返回 null
+     */
+    public synchronized float[] get(byte[] key) {
+        Long offset = index.get(HexFormat.of().formatHex(key));
+        if (offset == null) {
+            misses++;
+            return null;
+        }
+        try {
+            ByteBuffer header = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(header, offset + KEY_BYTES);
+            int dimensions = header.getInt(0);
+            ByteBuffer body = ByteBuffer.allocate(dimensions * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(body, offset + RECORD_HEADER);
+            float[] vector = new float[dimensions];
+            body.flip();
+            body.asFloatBuffer().get(vector);
+            hits++;
+            return vector;
+        } catch (IOException e) {
+            log.warn("Failed to read embedding cache entry, treat as miss.", e);
+            misses++;
+            return null;
+        }
+    }
+
+    /**
+     * 写入缓存，记录追加到文件末尾
+     */
+    public synchronized void put(byte[] key, float[] vector) {
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER + vector.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(key).putInt(vector.length);
+        buffer.asFloatBuffer().put(vector);
+        buffer.clear();
+        try {
+            long offset = channel.size();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, offset + buffer.position());
+            }
+            index.put(HexFormat.of().formatHex(key), offset);
+            records++;
+            scheduleCompaction();
+        } catch (IOException e) {
+            log.warn("Failed to append embedding cache entry.", e);
+        }
+    }
+
+    public synchronized int size() {
+        return index.size();
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    /**
+     * 等进行中的压实结束后关闭文件。不能持有锁等待，压实的最后一步需要加锁
+     */
+    @Override
+    public void close() throws IOException {
+        ExecutorUtils.awaitShutdown(compactor);
+        synchronized (this) {
+            if (channel.isOpen()) {
+                channel.force(true);
+                channel.close();
+            }
+        }
+    }
+
+    // 启动时顺序扫描数据文件重建索引，末尾不完整的记录直接截掉
+    private void replay() throws IOException {
+        long size = channel.size();
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER).order(ByteOrder.LITTLE_ENDIAN);
+        byte[] key = new byte[KEY_BYTES];
+        while (position + RECORD_HEADER <= size) {
+            header.clear();
+            readFully(header, position);
+            header.flip();
+            header.get(key);
+            int dimensions = header.getInt();
+            long next = position + RECORD_HEADER + (long) dimensions * Float.BYTES;
+            if (dimensions <= 0 || next > size) {
+                break;
+            }
+            index.put(HexFormat.of().formatHex(key), position);
+            records++;
+            position = next;
+        }
+        if (position < size) {
+            log.warn("Truncating incomplete embedding cache tail at {} of {}", position, size);
+            channel.truncate(position);
+        }
+    }
+
+    // 失效记录超过存活记录时需要压实
+    private boolean needsCompaction() {
+        return records > Math.max(maxEntries, index.size() * 2L);
+    }
+
+    // 在锁内调用：提交后台压实，已有压实任务时不重复提交
+    private void scheduleCompaction() {
+        if (compacting || !needsCompaction()) {
+            return;
+        }
+        try {
+            compactor.execute(this::compact);
+            compacting = true;
+        } catch (RejectedExecutionException e) {
+            // 已关闭，不再压实
+        }
+    }
+
+    /**
+     * 把存活记录按 LRU 顺序重写到新文件。
+     * 复制存活记录时不持有锁，读写照常进行：旧文件只追加，复制开始时记下的偏移一直有效；
+     * 最后加锁把复制期间追加的记录原样接到新文件末尾，替换文件并换算索引中的偏移
+     */
+    private void compact() {
+        Map<String, Long> live;
+        FileChannel source;
+        long end;
+        long recordsAtStart;
+        synchronized (this) {
+            live = new LinkedHashMap<>(index);
+            source = channel;
+            recordsAtStart = records;
+            try {
+                end = channel.size();
+            } catch (IOException e) {
+                log.warn("Failed to compact embedding cache.", e);
+                compacting = false;
+                return;
+            }
+        }
+        Path temp = null;
+        try {
+            temp = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                // 旧偏移 -> 新偏移
+                Map<Long, Long> moved = new HashMap<>();
+                long position = 0;
+                for (long offset : live.values()) {
+                    ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER).order(ByteOrder.LITTLE_ENDIAN);
+                    readFully(source, header, offset);
+                    int dimensions = header.getInt(KEY_BYTES);
+                    long length = RECORD_HEADER + (long) dimensions * Float.BYTES;
+                    transfer(source, offset, length, out);
+                    moved.put(offset, position);
+                    position += length;
+                }
+                synchronized (this) {
+                    long tail = channel.size() - end;
+                    transfer(channel, end, tail, out);
+                    out.force(true);
+                    channel.close();
+                    Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                    long base = position;
+                    // 复制期间被淘汰的条目不在索引中，其记录成为新文件里的失效记录
+                    index.replaceAll((key, offset) -> offset >= end ? base + (offset - end) : moved.get(offset));
+                    long before = records;
+                    records = moved.size() + (records - recordsAtStart);
+                    compacting = false;
+                    log.debug("Embedding cache compacted from {} to {} records", before, records);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Failed to compact embedding cache.", e);
+            synchronized (this) {
+                compacting = false;
+            }
+        } finally {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException e) {
+                    log.warn("Failed to delete temporary embedding cache file {}.", temp, e);
+                }
+            }
+        }
+    }
+
+    private static void transfer(FileChannel source, long position, long length, FileChannel out) throws IOException {
+        long copied = 0;
+        while (copied < length) {
+            copied += source.transferTo(position + copied, length - copied, out);
+        }
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        readFully(channel, buffer, position);
+    }
+
+    private static void readFully(FileChannel source, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (source.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of embedding cache file");
+            }
+        }
+    }
+}
@@ -16,6 +16,7 @@ public class Msg {
     String text;
     Map<String, Object> metadata;
     List<AssistantMessage.ToolCall> toolCalls;
+    List<ToolResponseMessage.ToolResponse> toolResponses;
 
     public Msg(Message message) {
         this.messageType = message.getMessageType();
@@ -24,6 +25,9 @@ public class Msg {
         if(message instanceof AssistantMessage am) {
             this.toolCalls = am.getToolCalls();
         }
+        if(message instanceof ToolResponseMessage trm) {
+            this.toolResponses = trm.getResponses();
+        }
     }
 
     public Message toMessage() {
@@ -31,6 +35,7 @@ public class Msg {
             case SYSTEM -> new SystemMessage(text);
             case USER -> new UserMessage(text, List.of(), metadata);
             case ASSISTANT -> new AssistantMessage(text, metadata, toolCalls, List.of());
+            case TOOL -> new ToolResponseMessage(toolResponses, metadata);
             default -> throw new IllegalArgumentException("Unsupported message type: " + messageType);
         };
     }
@@ -0,0 +1,18 @@
+package com.steven.ai.entity.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@Data
+public class ChatIdPageVO {
+    private List<ChatIdVO> items;
+    /**
+     * 下一页的游标，没有更多时为 null
+     */
+    private String nextCursor;
+}
@@ -0,0 +1,20 @@
+package com.steven.ai.entity.vo;
+
+import com.steven.ai.repository.ChatIdRegistry;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@NoArgsConstructor
+@Data
+public class ChatIdVO {
+    private String chatId;
+    /**
+     * 最后活跃时间（毫秒时间戳）
+     */
+    private Long lastActiveAt;
+
+    public ChatIdVO(ChatIdRegistry.Entry entry) {
+        this.chatId = entry.getChatId();
+        this.lastActiveAt = entry.getLastActiveAt();
+    }
+}
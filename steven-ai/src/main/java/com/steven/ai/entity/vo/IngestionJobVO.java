@@ -0,0 +1,27 @@
+package com.steven.ai.entity.vo;
+
+import com.steven.ai.ingestion.IngestionJob;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@NoArgsConstructor
+@Data
+public class IngestionJobVO {
+    private String jobId;
+    private String chatId;
+    private String fileName;
+    private String state;
+    private Integer totalPages;
+    private Integer indexedPages;
+    private String error;
+
+    public IngestionJobVO(IngestionJob job) {
+        this.jobId = job.getId();
+        this.chatId = job.getChatId();
+        this.fileName = job.getFileName();
+        this.state = job.getState().name().toLowerCase();
+        this.totalPages = job.getTotalPages();
+        this.indexedPages = job.getIndexedPages();
+        this.error = job.getError();
+    }
+}
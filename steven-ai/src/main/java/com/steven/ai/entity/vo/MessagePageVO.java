@@ -0,0 +1,21 @@
+package com.steven.ai.entity.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@Data
+public class MessagePageVO {
+    /**
+     * 本页消息，按时间从旧到新
+     */
+    private List<MessageVO> items;
+    /**
+     * 下一页（更早的消息）的游标，没有更多时为 null
+     */
+    private String nextCursor;
+}
@@ -8,6 +8,7 @@ import lombok.NoArgsConstructor;
 public class Result {
     private Integer ok;
     private String msg;
+    private Object data;
 
     private Result(Integer ok, String msg) {
         this.ok = ok;
@@ -18,6 +19,12 @@ public class Result {
         return new Result(1, "ok");
     }
 
+    public static Result ok(Object data) {
+        Result result = new Result(1, "ok");
+        result.data = data;
+        return result;
+    }
+
     public static Result fail(String msg) {
         return new Result(0, msg);
     }
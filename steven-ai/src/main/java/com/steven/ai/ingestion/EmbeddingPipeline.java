@@ -0,0 +1,190 @@
+package com.steven.ai.ingestion;
+
+import com.steven.ai.config.IngestionProperties;
+import com.steven.ai.utils.ExecutorUtils;
+import com.steven.ai.utils.TokenUtils;
+import com.steven.ai.vectorstore.AbstractLocalVectorStore;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.retry.support.RetryTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+/**
+ * 文档向量化导入流水线。
+ * <p>
+ * 文档按估算 token 数和条数上限分批，每批一次 embedding 请求；
+ * 多个批次在固定大小的线程池上并发执行，线程数即在途请求数上限，各批次独立重试，完成后立即写入向量库。
+ */
+@Slf4j
+@Component
+public class EmbeddingPipeline {
+
+    private final AbstractLocalVectorStore vectorStore;
+
+    private final EmbeddingModel embeddingModel;
+
+    private final IngestionProperties properties;
+
+    private final RetryTemplate retryTemplate;
+
+    private final ExecutorService executor;
+
+    public EmbeddingPipeline(VectorStore vectorStore, IngestionProperties properties) {
+        this.vectorStore = (AbstractLocalVectorStore) vectorStore;
+        this.embeddingModel = this.vectorStore.getEmbeddingModel();
+        this.properties = properties;
+        this.retryTemplate = RetryTemplate.builder()
+                .maxAttempts(properties.getMaxAttempts())
+                .exponentialBackoff(properties.getRetryBackoffMillis(), 2, properties.getRetryBackoffMillis() * 16)
+                .build();
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(properties.getConcurrency(), r -> {
+            Thread thread = new Thread(r, "embedding-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 向量化并写入向量库，全部批次完成后返回。
+     * 任一批次重试耗尽时停止提交新批次，已写入的文档会被撤回，保证一个文件要么完整入库要么不入库。
+     * @param documents 待导入的文档
+     * @return 导入统计
+     */
+    public IngestionReport ingest(List<Document> documents) {
+        return ingest(documents, count -> {
+        });
+    }
+
+    /**
+     * 向量化并写入向量库，每个批次入库后回调已入库的文档数
+     * @param documents 待导入的文档
+     * @param progress 进度回调，参数为本批次入库的文档数，在工作线程中调用
+     * @return 导入统计
+     */
+    public IngestionReport ingest(List<Document> documents, IntConsumer progress) {
+        return ingest(documents.iterator(), progress);
+    }
+
+    /**
+     * 流式导入：边从来源拉取文档边分批提交，来源可以是仍在解析中的 PDF。
+     * 在途批次数有上限，达到上限时暂停拉取，使内存中的待处理文档数与来源总量无关。
+     * @param documents 文档来源，按需拉取
+     * @param progress 进度回调，参数为本批次入库的文档数，在工作线程中调用
+     * @return 导入统计
+     */
+    public IngestionReport ingest(Iterator<Document> documents, IntConsumer progress) {
+        long start = System.currentTimeMillis();
+        List<String> written = Collections.synchronizedList(new ArrayList<>());
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        Semaphore inFlight = new Semaphore(properties.getConcurrency() * 2);
+        AtomicBoolean failed = new AtomicBoolean();
+        int count = 0;
+        try {
+            // 1.贪心分批：在条数和 token 预算内尽量装满，单条超出预算的文档独占一批
+            List<Document> batch = new ArrayList<>();
+            int tokens = 0;
+            while (documents.hasNext() && !failed.get()) {
+                Document document = documents.next();
+                count++;
+                int estimate = TokenUtils.estimate(document.getText());
+                if (!batch.isEmpty() && (batch.size() >= properties.getMaxBatchSize() || tokens + estimate > properties.getMaxBatchTokens())) {
+                    futures.add(submit(futures.size(), batch, written, progress, inFlight, failed));
+                    batch = new ArrayList<>();
+                    tokens = 0;
+                }
+                batch.add(document);
+                tokens += estimate;
+            }
+            if (!batch.isEmpty() && !failed.get()) {
+                futures.add(submit(futures.size(), batch, written, progress, inFlight, failed));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failed.set(true);
+            futures.add(CompletableFuture.failedFuture(e));
+        } catch (RuntimeException e) {
+            // 来源本身出错（例如解析失败），等已提交的批次结束后统一撤回
+            failed.set(true);
+            futures.add(CompletableFuture.failedFuture(e));
+        }
+
+        // 2.等待已提交的批次结束，失败的批次不影响其它批次继续执行
+        int attempts = 0;
+        RuntimeException failure = null;
+        for (CompletableFuture<Integer> future : futures) {
+            try {
+                attempts += future.join();
+            } catch (CompletionException e) {
+                log.warn("Embedding batch failed.", e.getCause());
+                if (failure == null) {
+                    failure = new RuntimeException("Ingestion failed: " + e.getCause().getMessage(), e.getCause());
+                } else {
+                    failure.addSuppressed(e.getCause());
+                }
+            }
+        }
+        if (failure != null) {
+            if (!written.isEmpty()) {
+                vectorStore.delete(new ArrayList<>(written));
+            }
+            throw failure;
+        }
+
+        IngestionReport report = new IngestionReport(count, futures.size(), attempts, System.currentTimeMillis() - start);
+        log.info("Ingested {} documents in {} batches ({} attempts), took {} ms",
+                report.getDocuments(), report.getBatches(), report.getAttempts(), report.getElapsedMillis());
+        return report;
+    }
+
+    // 等进行中的批次写完再退出，不中断线程：中断会关闭写前日志的文件通道
+    @PreDestroy
+    public void shutdown() {
+        ExecutorUtils.awaitShutdown(executor);
+    }
+
+    // 占用一个在途名额后提交批次，批次结束时归还
+    private CompletableFuture<Integer> submit(int index, List<Document> batch, List<String> written, IntConsumer progress,
+                                              Semaphore inFlight, AtomicBoolean failed) throws InterruptedException {
+        inFlight.acquire();
+        return CompletableFuture.supplyAsync(() -> embedBatch(index, batch, written, progress), executor)
+                .whenComplete((attempts, e) -> {
+                    inFlight.release();
+                    if (e != null) {
+                        failed.set(true);
+                    }
+                });
+    }
+
+    // 执行单个批次，返回实际尝试次数
+    private int embedBatch(int index, List<Document> batch, List<String> written, IntConsumer progress) {
+        List<String> texts = batch.stream().map(Document::getText).toList();
+        return retryTemplate.execute(context -> {
+            long start = System.currentTimeMillis();
+            List<float[]> embeddings = embeddingModel.embed(texts);
+            long embedded = System.currentTimeMillis();
+            vectorStore.add(batch, embeddings);
+            batch.forEach(document -> written.add(document.getId()));
+            progress.accept(batch.size());
+            log.debug("Batch {} ({} documents) embedded in {} ms, indexed in {} ms, attempt {}",
+                    index, batch.size(), embedded - start, System.currentTimeMillis() - embedded, context.getRetryCount() + 1);
+            return context.getRetryCount() + 1;
+        });
+    }
+}
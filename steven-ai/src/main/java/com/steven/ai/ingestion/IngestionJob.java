@@ -0,0 +1,72 @@
+package com.steven.ai.ingestion;
+
+import lombok.Getter;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 后台导入任务，状态字段由工作线程更新、由查询线程读取
+ */
+@Getter
+public class IngestionJob {
+
+    public enum State {
+        QUEUED, RUNNING, SUCCEEDED, FAILED
+    }
+
+    private final String id;
+
+    private final String chatId;
+
+    private final String fileName;
+
+    private final long createdAt = System.currentTimeMillis();
+
+    private volatile State state = State.QUEUED;
+
+    // 解析完成前为 0
+    private volatile int totalPages;
+
+    private final AtomicInteger indexedPages = new AtomicInteger();
+
+    private volatile String error;
+
+    private volatile long finishedAt;
+
+    public IngestionJob(String id, String chatId, String fileName) {
+        this.id = id;
+        this.chatId = chatId;
+        this.fileName = fileName;
+    }
+
+    public int getIndexedPages() {
+        return indexedPages.get();
+    }
+
+    public boolean isFinished() {
+        return state == State.SUCCEEDED || state == State.FAILED;
+    }
+
+    void start() {
+        state = State.RUNNING;
+    }
+
+    void setTotalPages(int totalPages) {
+        this.totalPages = totalPages;
+    }
+
+    void addIndexedPages(int pages) {
+        indexedPages.addAndGet(pages);
+    }
+
+    void succeed() {
+        finishedAt = System.currentTimeMillis();
+        state = State.SUCCEEDED;
+    }
+
+    void fail(String error) {
+        this.error = error;
+        finishedAt = System.currentTimeMillis();
+        state = State.FAILED;
+    }
+}
@@ -0,0 +1,279 @@
+package com.steven.ai.ingestion;
+
+import com.steven.ai.config.IngestionProperties;
+import jakarta.annotation.PreDestroy;
+import com.steven.ai.utils.ExecutorUtils;
+import com.steven.ai.vectorstore.AbstractLocalVectorStore;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * PDF 后台导入任务队列。
+ * <p>
+ * 上传请求只负责提交任务并立即返回任务id，解析、向量化、写入向量库都在后台完成；
+ * 排队任务数有上限，队列满时拒绝提交，避免积压无限增长。
+ * 文件按内容哈希命名，已导入过的文件再次上传时直接返回成功，不再解析和向量化；同一文件正在导入时返回正在进行的任务。
+ */
+@Slf4j
+@Component
+public class IngestionJobService {
+
+    private final EmbeddingPipeline embeddingPipeline;
+
+    private final PdfPageExtractor pdfPageExtractor;
+
+    private final IngestionProperties properties;
+
+    private final VectorStore vectorStore;
+
+    private final ThreadPoolExecutor executor;
+
+    // 任务id -> 任务
+    private final Map<String, IngestionJob> jobs = new ConcurrentHashMap<>();
+
+    // 文件名 -> 该文件最近一次的任务
+    private final Map<String, IngestionJob> latestByFile = new ConcurrentHashMap<>();
+
+    // 已完整导入向量库的文件名，持久化在 indexedFile 中，重启后仍可跳过重复导入
+    private final Set<String> indexedFiles = ConcurrentHashMap.newKeySet();
+
+    // 已导入但向量尚未落盘（未开启写前日志）的文件，等向量库保存快照后才写入 indexedFile
+    private final Set<String> unsavedFiles = ConcurrentHashMap.newKeySet();
+
+    public IngestionJobService(EmbeddingPipeline embeddingPipeline, PdfPageExtractor pdfPageExtractor,
+                               IngestionProperties properties, VectorStore vectorStore) {
+        this.embeddingPipeline = embeddingPipeline;
+        this.pdfPageExtractor = pdfPageExtractor;
+        this.properties = properties;
+        this.vectorStore = vectorStore;
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(properties.getWorkers(), properties.getWorkers(),
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(properties.getQueueCapacity()),
+                r -> {
+                    Thread thread = new Thread(r, "pdf-ingestion-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    @PostConstruct
+    public void init() {
+        Path path = Path.of(properties.getIndexedFile());
+        if (!Files.exists(path)) {
+            return;
+        }
+        try {
+            Files.readAllLines(path, StandardCharsets.UTF_8).stream()
+                    .map(String::trim)
+                    .filter(line -> !line.isEmpty())
+                    .forEach(indexedFiles::add);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        log.info("Loaded {} indexed files from {}", indexedFiles.size(), path);
+    }
+
+    /**
+     * 提交导入任务
+     * @param chatId 会话id
+     * @param resource 已保存到本地的 PDF 文件
+     * @return 新建的任务；文件已导入时返回一个已成功的任务，同一文件正在排队或导入时返回该任务
+     * @throws RejectedExecutionException 排队任务已满
+     */
+    public synchronized IngestionJob submit(String chatId, Resource resource) {
+        evictExpired();
+        String fileName = resource.getFilename();
+        IngestionJob running = latestByFile.get(fileName);
+        if (running != null && !running.isFinished()) {
+            return running;
+        }
+        IngestionJob job = new IngestionJob(UUID.randomUUID().toString(), chatId, fileName);
+        if (indexedFiles.contains(fileName)) {
+            log.info("File {} is already indexed, skip ingestion for chat {}", fileName, chatId);
+            job.succeed();
+            jobs.put(job.getId(), job);
+            latestByFile.put(fileName, job);
+            return job;
+        }
+        jobs.put(job.getId(), job);
+        IngestionJob previous = latestByFile.put(job.getFileName(), job);
+        try {
+            executor.execute(() -> run(job, resource));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            if (previous != null) {
+                latestByFile.put(job.getFileName(), previous);
+            } else {
+                latestByFile.remove(job.getFileName(), job);
+            }
+            throw e;
+        }
+        return job;
+    }
+
+    public IngestionJob getJob(String jobId) {
+        return jobs.get(jobId);
+    }
+
+    /**
+     * 文件是否已完整导入向量库
+     */
+    public boolean isIndexed(String fileName) {
+        return indexedFiles.contains(fileName);
+    }
+
+    /**
+     * 已完整导入向量库的全部文件名
+     */
+    public Set<String> getIndexedFiles() {
+        return Set.copyOf(indexedFiles);
+    }
+
+    /**
+     * 文件是否有排队中或正在进行的导入任务
+     */
+    public boolean isIngesting(String fileName) {
+        IngestionJob job = latestByFile.get(fileName);
+        return job != null && !job.isFinished();
+    }
+
+    /**
+     * 文件的文档已从向量库删除，移除导入记录，之后再次上传会重新导入
+     */
+    public synchronized void forget(String fileName) {
+        if (!indexedFiles.remove(fileName)) {
+            return;
+        }
+        latestByFile.remove(fileName);
+        if (unsavedFiles.remove(fileName)) {
+            // 从未写入记录文件
+            return;
+        }
+        // 记录文件只追加，移除时整体重写，不写入尚未落盘的文件
+        Path path = Path.of(properties.getIndexedFile());
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            Files.write(temp, indexedFiles.stream().filter(file -> !unsavedFiles.contains(file)).toList(), StandardCharsets.UTF_8);
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 记录旧版本按文件名存放的文件为已导入。旧版本上传时同步导入，文档随向量库快照加载，没有写入记录文件
+     * @param fileNames 旧版本会话引用的文件名（分区名）
+     */
+    public synchronized void seedLegacy(Set<String> fileNames) throws IOException {
+        for (String fileName : fileNames) {
+            if (indexedFiles.add(fileName)) {
+                appendIndexed(fileName);
+            }
+        }
+    }
+
+    /**
+     * 已导入但向量尚未落盘的文件，向量库保存快照前取一次，保存完成后传给 {@link #confirmSaved}
+     */
+    public Set<String> getUnsavedFiles() {
+        return Set.copyOf(unsavedFiles);
+    }
+
+    /**
+     * 向量库已保存快照，把保存前已导入的文件写入记录文件
+     * @param fileNames 保存快照前 {@link #getUnsavedFiles} 的结果
+     */
+    public synchronized void confirmSaved(Set<String> fileNames) throws IOException {
+        for (String fileName : fileNames) {
+            // 期间被清理的文件不再记录
+            if (unsavedFiles.remove(fileName) && indexedFiles.contains(fileName)) {
+                appendIndexed(fileName);
+            }
+        }
+    }
+
+    /**
+     * 查询文件最近一次导入任务，没有任务（例如重启前已导入）时返回 null
+     */
+    public IngestionJob getLatestJob(String fileName) {
+        return latestByFile.get(fileName);
+    }
+
+    /**
+     * 停止导入。排队中的任务直接丢弃（文件没有导入记录，重启后提问时会重新提交）；
+     * 进行中的任务等它写完，不中断线程，否则会关闭写前日志的文件通道。可重复调用
+     */
+    @PreDestroy
+    public void shutdown() {
+        // 与 submit 互斥，之后的提交都会被拒绝；等待时不持有锁，进行中的任务结束时还要记录导入结果
+        synchronized (this) {
+            executor.getQueue().clear();
+            executor.shutdown();
+        }
+        ExecutorUtils.awaitShutdown(executor);
+    }
+
+    private void run(IngestionJob job, Resource resource) {
+        job.start();
+        try (PdfPageExtractor.PageStream pages = pdfPageExtractor.open(resource)) {
+            // 清掉上次中断的导入留下的部分文档，避免同一文件的文档重复
+            vectorStore.delete(new FilterExpressionBuilder().eq(AbstractLocalVectorStore.PARTITION_KEY, job.getFileName()).build());
+            // 按页并行解析，边解析边分批向量化写入向量库
+            job.setTotalPages(pages.getPageCount());
+            embeddingPipeline.ingest(pages, job::addIndexedPages);
+            markIndexed(job.getFileName());
+            job.succeed();
+            log.info("Ingestion job {} for {} finished, pages = {}", job.getId(), job.getFileName(), job.getTotalPages());
+        } catch (Exception e) {
+            log.error("Ingestion job {} for {} failed.", job.getId(), job.getFileName(), e);
+            job.fail(e.getMessage());
+        }
+    }
+
+    /**
+     * 记录已导入的文件。只有向量已经落盘（挂着写前日志）时才立即写入记录文件；
+     * 否则只记在内存中，等向量库保存快照后由 {@link #confirmSaved} 写入，避免崩溃后记录还在而向量已丢失，之后的上传被一直跳过
+     */
+    private synchronized void markIndexed(String fileName) throws IOException {
+        if (vectorStore instanceof AbstractLocalVectorStore local && local.isWriteAheadLogAttached()) {
+            appendIndexed(fileName);
+        } else {
+            unsavedFiles.add(fileName);
+        }
+        indexedFiles.add(fileName);
+    }
+
+    // 追加一行并刷盘
+    private void appendIndexed(String fileName) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(Path.of(properties.getIndexedFile()), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.SYNC)) {
+            writer.write(fileName);
+            writer.write(System.lineSeparator());
+        }
+    }
+
+    // 清理过期的已结束任务
+    private void evictExpired() {
+        long deadline = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(properties.getJobRetentionMinutes());
+        jobs.values().removeIf(job -> job.isFinished() && job.getFinishedAt() < deadline);
+        latestByFile.values().removeIf(job -> job.isFinished() && job.getFinishedAt() < deadline);
+    }
+}
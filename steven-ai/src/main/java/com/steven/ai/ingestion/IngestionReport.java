@@ -0,0 +1,28 @@
+package com.steven.ai.ingestion;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 一次导入的统计信息
+ */
+@Data
+@AllArgsConstructor
+public class IngestionReport {
+    /**
+     * 文档数
+     */
+    private int documents;
+    /**
+     * 批次数
+     */
+    private int batches;
+    /**
+     * embedding 请求总次数（含重试）
+     */
+    private int attempts;
+    /**
+     * 总耗时（毫秒）
+     */
+    private long elapsedMillis;
+}
@@ -0,0 +1,250 @@
+package com.steven.ai.ingestion;
+
+import com.steven.ai.config.IngestionProperties;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.reader.ExtractedTextFormatter;
+import org.springframework.ai.reader.pdf.PagePdfDocumentReader;
+import org.springframework.ai.reader.pdf.layout.PDFLayoutTextStripperByArea;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.awt.Rectangle;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 并行、流式的 PDF 分页解析。
+ * <p>
+ * 每个解析线程各自打开一份 PDDocument（PDFBox 的文档对象不是线程安全的），按页段领取任务，
+ * 每页解析完成后放入有界队列，由调用方边拉取边向量化。队列满时解析线程阻塞，
+ * 因此无论 PDF 有多少页，内存中待处理的页面数都不超过队列容量。
+ * <p>
+ * 产出的 Document 与 PagePdfDocumentReader 每页一个 Document 时一致：元数据包含 page_number 与 file_name，空白页跳过。
+ * 页面按解析完成的先后产出，不保证页码顺序。
+ */
+@Slf4j
+@Component
+public class PdfPageExtractor {
+
+    private static final String PDF_PAGE_REGION = "pdfPageRegion";
+
+    // 队列中的结束标记
+    private static final Document END = new Document("end");
+
+    private final IngestionProperties properties;
+
+    private final ExecutorService executor;
+
+    private final int threads;
+
+    public PdfPageExtractor(IngestionProperties properties) {
+        this.properties = properties;
+        this.threads = properties.getExtractionThreads() > 0
+                ? properties.getExtractionThreads() : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "pdf-extract-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 开始解析，立即返回页面流；调用方用完后必须关闭
+     * @param resource 本地 PDF 文件
+     * @return 页面流
+     */
+    public PageStream open(Resource resource) throws IOException {
+        File file = resource.getFile();
+        int pageCount;
+        try (PDDocument document = Loader.loadPDF(file)) {
+            pageCount = document.getNumberOfPages();
+        }
+        PageStream stream = new PageStream(file, resource.getFilename(), pageCount);
+        // 页数少时不必开满线程
+        int workers = Math.max(1, Math.min(threads, (pageCount + properties.getExtractionChunkPages() - 1) / properties.getExtractionChunkPages()));
+        stream.start(workers);
+        return stream;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 解析中的页面流，按需拉取 Document
+     */
+    public class PageStream implements Iterator<Document>, Closeable {
+
+        private final File file;
+
+        private final String fileName;
+
+        private final int pageCount;
+
+        private final BlockingQueue<Document> queue = new ArrayBlockingQueue<>(properties.getExtractionQueueCapacity());
+
+        // 下一个待领取页段的起始页（从 0 开始）
+        private final AtomicInteger nextPage = new AtomicInteger();
+
+        private final AtomicInteger runningWorkers = new AtomicInteger();
+
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private final AtomicReference<Throwable> error = new AtomicReference<>();
+
+        private Document next;
+
+        private boolean finished;
+
+        private PageStream(File file, String fileName, int pageCount) {
+            this.file = file;
+            this.fileName = fileName;
+            this.pageCount = pageCount;
+        }
+
+        public int getPageCount() {
+            return pageCount;
+        }
+
+        private void start(int workers) {
+            runningWorkers.set(workers);
+            for (int i = 0; i < workers; i++) {
+                executor.execute(this::work);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next != null) {
+                return true;
+            }
+            if (finished) {
+                return false;
+            }
+            try {
+                Document document = queue.take();
+                if (document == END) {
+                    finished = true;
+                    Throwable e = error.get();
+                    if (e != null) {
+                        throw new RuntimeException("Failed to extract PDF " + fileName, e);
+                    }
+                    return false;
+                }
+                next = document;
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public Document next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Document document = next;
+            next = null;
+            return document;
+        }
+
+        /**
+         * 停止解析并释放队列，解析线程会在处理完当前页后退出
+         */
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                queue.clear();
+            }
+        }
+
+        private void work() {
+            try (PDDocument document = Loader.loadPDF(file)) {
+                PDFLayoutTextStripperByArea stripper = new PDFLayoutTextStripperByArea();
+                ExtractedTextFormatter formatter = ExtractedTextFormatter.defaults();
+                int chunk = properties.getExtractionChunkPages();
+                int from;
+                while (!closed.get() && error.get() == null && (from = nextPage.getAndAdd(chunk)) < pageCount) {
+                    int to = Math.min(from + chunk, pageCount);
+                    for (int index = from; index < to && !closed.get(); index++) {
+                        String text = extract(stripper, document.getPage(index));
+                        if (StringUtils.hasText(text)) {
+                            emit(toDocument(formatter.format(text, index), index + 1));
+                        }
+                    }
+                }
+            } catch (Throwable e) {
+                error.compareAndSet(null, e);
+            } finally {
+                // 最后一个退出的线程写入结束标记
+                if (runningWorkers.decrementAndGet() == 0) {
+                    finish();
+                }
+            }
+        }
+
+        private String extract(PDFLayoutTextStripperByArea stripper, PDPage page) throws IOException {
+            PDRectangle mediaBox = page.getMediaBox();
+            stripper.addRegion(PDF_PAGE_REGION, new Rectangle((int) mediaBox.getLowerLeftX(), (int) mediaBox.getLowerLeftY(),
+                    (int) mediaBox.getWidth(), (int) mediaBox.getHeight()));
+            stripper.extractRegions(page);
+            String text = stripper.getTextForRegion(PDF_PAGE_REGION);
+            stripper.removeRegion(PDF_PAGE_REGION);
+            return text;
+        }
+
+        // 队列满时阻塞，关闭后放弃
+        private void emit(Document document) throws InterruptedException {
+            while (!closed.get()) {
+                if (queue.offer(document, 100, TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+            }
+        }
+
+        private void finish() {
+            while (true) {
+                if (closed.get()) {
+                    queue.clear();
+                }
+                try {
+                    if (queue.offer(END, 100, TimeUnit.MILLISECONDS)) {
+                        return;
+                    }
+                } catch (InterruptedException e) {
+                    // 线程池关闭时也要写入结束标记，避免调用方一直阻塞
+                    queue.clear();
+                    queue.offer(END);
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+
+        private Document toDocument(String text, int pageNumber) {
+            Map<String, Object> metadata = new HashMap<>();
+            metadata.put(PagePdfDocumentReader.METADATA_START_PAGE_NUMBER, pageNumber);
+            metadata.put(PagePdfDocumentReader.METADATA_FILE_NAME, fileName);
+            return new Document(text, metadata);
+        }
+    }
+}
@@ -0,0 +1,362 @@
+package com.steven.ai.memory;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.Message;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * 会话记忆与会话列表的追加日志，记录快照之后的每一次变更。
+ * <p>
+ * 日志按代分文件：{name}.1、{name}.2 ……，每次启动和每次快照都从新的一代开始写。
+ * 每条记录为 [长度 4B][CRC32 4B][内容]，内容第一个字节为类型：
+ * <pre>
+ * MESSAGES   会话id | 追加前的消息数 | 条数 | 每条消息（编码见 {@link MessageCodec}）
+ * CLEAR      会话id
+ * SAVE_CHAT  业务类型 | 会话id | 创建时间
+ * DELETE_CHAT 业务类型 | 会话id
+ * CLEAR_TYPE 业务类型
+ * </pre>
+ * 写入只追加不刷盘，调用方随后调用 {@link #sync} 等待落盘；并发的多个写入由先到的线程一次 fsync 一起提交。
+ * 快照在切换到新一代之后才开始保存，新一代开头的记录可能已包含在快照中：
+ * MESSAGES 带有追加前的消息数，重放时跳过快照中已有的部分，其余操作本身可重复执行。
+ */
+@Slf4j
+public class ChatMemoryJournal implements Closeable {
+
+    private static final byte MESSAGES = 1;
+
+    private static final byte CLEAR = 2;
+
+    private static final byte SAVE_CHAT = 3;
+
+    private static final byte DELETE_CHAT = 4;
+
+    private static final byte CLEAR_TYPE = 5;
+
+    private static final int RECORD_HEADER = 8;
+
+    private final Path directory;
+
+    private final String name;
+
+    private final Object appendLock = new Object();
+
+    private final Object syncLock = new Object();
+
+    private FileChannel channel;
+
+    private long generation;
+
+    // 累计追加的字节数（跨代），作为写入位置
+    private long appended;
+
+    private volatile long synced;
+
+    /**
+     * @param path 日志文件名前缀，实际文件为 path.{代}
+     */
+    public ChatMemoryJournal(Path path) {
+        Path absolute = path.toAbsolutePath();
+        this.directory = absolute.getParent();
+        this.name = absolute.getFileName().toString();
+        List<Long> generations = generations();
+        this.generation = generations.isEmpty() ? 1 : generations.get(generations.size() - 1) + 1;
+        this.channel = open(generation);
+    }
+
+    /**
+     * 一次重放中读到的操作
+     */
+    public interface Replayer {
+
+        /**
+         * @param offset 追加前会话中已有的消息数
+         */
+        void messages(String conversationId, int offset, List<Message> messages);
+
+        void clear(String conversationId);
+
+        void saveChat(String type, String chatId, long timestamp);
+
+        void deleteChat(String type, String chatId);
+
+        void clearType(String type);
+    }
+
+    /**
+     * 按代、按写入顺序重放当前代之前的全部日志；文件末尾不完整的记录（写入中途崩溃）会被截掉
+     * @return 重放的记录数
+     */
+    public int replay(Replayer replayer) {
+        int records = 0;
+        for (long existing : generations()) {
+            if (existing >= generation) {
+                continue;
+            }
+            int replayed = replay(fileOf(existing), replayer);
+            if (replayed == 0) {
+                // 没有有效记录的旧日志（上次启动后未发生变更）直接删除，避免空文件随重启累积
+                try {
+                    Files.deleteIfExists(fileOf(existing));
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            records += replayed;
+        }
+        return records;
+    }
+
+    /**
+     * 追加消息记录，返回写入位置，调用 {@link #sync} 等待落盘
+     * @param offset 追加前会话中已有的消息数
+     */
+    public long appendMessages(String conversationId, int offset, List<Message> messages) {
+        return append(out -> {
+            out.writeByte(MESSAGES);
+            MessageCodec.writeString(out, conversationId);
+            out.writeInt(offset);
+            out.writeInt(messages.size());
+            for (Message message : messages) {
+                MessageCodec.writeMessage(out, message);
+            }
+        });
+    }
+
+    public long appendClear(String conversationId) {
+        return append(out -> {
+            out.writeByte(CLEAR);
+            MessageCodec.writeString(out, conversationId);
+        });
+    }
+
+    /**
+     * 追加新会话记录；已有会话的活跃时间只在快照中保存，不逐次记日志
+     */
+    public long appendSaveChat(String type, String chatId, long timestamp) {
+        return append(out -> {
+            out.writeByte(SAVE_CHAT);
+            MessageCodec.writeString(out, type);
+            MessageCodec.writeString(out, chatId);
+            out.writeLong(timestamp);
+        });
+    }
+
+    public long appendDeleteChat(String type, String chatId) {
+        return append(out -> {
+            out.writeByte(DELETE_CHAT);
+            MessageCodec.writeString(out, type);
+            MessageCodec.writeString(out, chatId);
+        });
+    }
+
+    public long appendClearType(String type) {
+        return append(out -> {
+            out.writeByte(CLEAR_TYPE);
+            MessageCodec.writeString(out, type);
+        });
+    }
+
+    /**
+     * 等待 position 之前的内容落盘。已有线程在刷盘时排队等待，轮到时一次 fsync 覆盖期间所有线程追加的内容
+     */
+    public void sync(long position) {
+        if (synced >= position) {
+            return;
+        }
+        synchronized (syncLock) {
+            if (synced >= position) {
+                return;
+            }
+            long target;
+            FileChannel current;
+            synchronized (appendLock) {
+                target = appended;
+                current = channel;
+            }
+            try {
+                current.force(false);
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to sync chat memory journal", e);
+            }
+            synced = target;
+        }
+    }
+
+    /**
+     * 切换到新一代日志文件，此后的写入进入新一代
+     * @return 新一代的编号，此前各代的内容在快照保存后可以用 {@link #deleteBefore} 删除
+     */
+    public long rotate() {
+        synchronized (syncLock) {
+            synchronized (appendLock) {
+                try {
+                    channel.force(false);
+                    channel.close();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+                synced = appended;
+                channel = open(++generation);
+                return generation;
+            }
+        }
+    }
+
+    /**
+     * 删除编号小于 generation 的日志文件
+     */
+    public void deleteBefore(long generation) {
+        for (long existing : generations()) {
+            if (existing < generation) {
+                try {
+                    Files.deleteIfExists(fileOf(existing));
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 磁盘上全部日志文件的字节数，用于判断是否需要保存快照
+     */
+    public long size() {
+        return generations().stream().mapToLong(existing -> fileOf(existing).toFile().length()).sum();
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (syncLock) {
+            synchronized (appendLock) {
+                channel.force(false);
+                channel.close();
+                synced = appended;
+            }
+        }
+    }
+
+    private interface RecordWriter {
+
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private long append(RecordWriter writer) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writer.write(out);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        byte[] payload = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER + payload.length);
+        buffer.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+        synchronized (appendLock) {
+            try {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to append chat memory journal", e);
+            }
+            appended += buffer.limit();
+            return appended;
+        }
+    }
+
+    private int replay(Path file, Replayer replayer) {
+        int records = 0;
+        long valid = 0;
+        long fileSize = file.toFile().length();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            while (valid + RECORD_HEADER <= fileSize) {
+                int length = in.readInt();
+                int checksum = in.readInt();
+                // 长度越界或校验失败说明记录只写了一半（写入中途崩溃），视为日志末尾
+                if (length <= 0 || valid + RECORD_HEADER + length > fileSize) {
+                    break;
+                }
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                apply(payload, replayer);
+                valid += RECORD_HEADER + length;
+                records++;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        if (valid < fileSize) {
+            log.warn("Chat memory journal {} has a torn tail, truncating {} bytes.", file, fileSize - valid);
+            try (FileChannel truncate = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                truncate.truncate(valid);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return records;
+    }
+
+    private void apply(byte[] payload, Replayer replayer) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte type = in.readByte();
+        switch (type) {
+            case MESSAGES -> {
+                String conversationId = MessageCodec.readString(in);
+                int offset = in.readInt();
+                int count = in.readInt();
+                List<Message> messages = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    messages.add(MessageCodec.readMessage(in));
+                }
+                replayer.messages(conversationId, offset, messages);
+            }
+            case CLEAR -> replayer.clear(MessageCodec.readString(in));
+            case SAVE_CHAT -> replayer.saveChat(MessageCodec.readString(in), MessageCodec.readString(in), in.readLong());
+            case DELETE_CHAT -> replayer.deleteChat(MessageCodec.readString(in), MessageCodec.readString(in));
+            case CLEAR_TYPE -> replayer.clearType(MessageCodec.readString(in));
+            default -> throw new IOException("Unknown chat memory journal record type " + type);
+        }
+    }
+
+    private FileChannel open(long generation) {
+        try {
+            return FileChannel.open(fileOf(generation), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open chat memory journal " + fileOf(generation), e);
+        }
+    }
+
+    private Path fileOf(long generation) {
+        return directory.resolve(name + "." + generation);
+    }
+
+    // 磁盘上已有的日志代，升序
+    private List<Long> generations() {
+        String prefix = name + ".";
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(file -> file.startsWith(prefix) && file.substring(prefix.length()).matches("\\d+"))
+                    .map(file -> Long.parseLong(file.substring(prefix.length())))
+                    .sorted()
+                    .toList();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
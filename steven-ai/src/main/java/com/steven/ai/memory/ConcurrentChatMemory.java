@@ -0,0 +1,485 @@
+package com.steven.ai.memory;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.util.Assert;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 并发的会话记忆，替代 InMemoryChatMemory，并提供删除、枚举与快照操作。
+ * <p>
+ * 每个会话是一个只追加的消息数组：写入只锁该会话，不同会话的写入互不竞争；
+ * 写完后发布新的 (数组, 长度) 视图，读取与快照只读 volatile 视图，不加锁也不阻塞写入。
+ * 已发布的位置不再修改，扩容时复制到新数组，因此读到的视图始终完整。
+ * <p>
+ * 配置了溢出目录时按两级存放：后台定期把空闲超过 idleMillis 的会话压缩写入磁盘并释放内存，
+ * 内存中会话的估算字节数超过 maxHeapBytes 时再按最久未访问依次写出；下次读写该会话时从磁盘载回。
+ * 溢出文件只是内存的延伸，持久化仍由日志和快照负责，启动时清空溢出目录。
+ * <p>
+ * 挂上 {@link ChatMemoryJournal} 后，写入内存与记日志在同一把会话锁内完成，
+ * 同一会话在日志中的顺序与实际生效的顺序一致；等待落盘在锁外进行，并发写入合并刷盘。
+ */
+@Slf4j
+public class ConcurrentChatMemory implements ChatMemory, Closeable {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    // 每条消息除文本外的对象开销估算（消息对象、metadata、数组槽位）
+    private static final int MESSAGE_OVERHEAD_BYTES = 256;
+
+    private static final String SPILL_SUFFIX = ".bin";
+
+    private static final View EMPTY = new View(new Message[0], 0);
+
+    private final Map<String, Conversation> conversations = new ConcurrentHashMap<>();
+
+    private final Path spillDirectory;
+
+    private final long idleMillis;
+
+    private final long maxHeapBytes;
+
+    // 内存中会话的估算字节数
+    private final AtomicLong hotBytes = new AtomicLong();
+
+    private final AtomicLong fileIds = new AtomicLong();
+
+    private final ScheduledExecutorService spiller;
+
+    private volatile ChatMemoryJournal journal;
+
+    // 会话被删除后的回调，用于清理装饰器（如滚动摘要）按会话保存的状态
+    private final List<Consumer<String>> deleteListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * 全部会话常驻内存
+     */
+    public ConcurrentChatMemory() {
+        this.spillDirectory = null;
+        this.idleMillis = 0;
+        this.maxHeapBytes = 0;
+        this.spiller = null;
+    }
+
+    /**
+     * @param spillDirectory 溢出文件目录，启动时清空
+     * @param idleMillis 超过该时长未访问的会话写入磁盘，0 表示不按空闲时间溢出
+     * @param maxHeapBytes 内存中会话的估算字节数上限，超出时按最久未访问写入磁盘，0 表示不限
+     * @param sweepIntervalMillis 检查间隔
+     */
+    public ConcurrentChatMemory(Path spillDirectory, long idleMillis, long maxHeapBytes, long sweepIntervalMillis) {
+        Assert.notNull(spillDirectory, "spillDirectory must not be null");
+        Assert.isTrue(idleMillis >= 0, "idleMillis must not be negative");
+        Assert.isTrue(maxHeapBytes >= 0, "maxHeapBytes must not be negative");
+        Assert.isTrue(sweepIntervalMillis > 0, "sweepIntervalMillis must be greater than 0");
+        this.spillDirectory = spillDirectory;
+        this.idleMillis = idleMillis;
+        this.maxHeapBytes = maxHeapBytes;
+        clearSpillDirectory();
+        this.spiller = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "chat-memory-spiller");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.spiller.scheduleWithFixedDelay(() -> {
+            try {
+                sweep();
+            } catch (RuntimeException e) {
+                log.error("Failed to spill idle conversations.", e);
+            }
+        }, sweepIntervalMillis, sweepIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        ChatMemoryJournal current;
+        long position;
+        while (true) {
+            Conversation conversation = conversations.computeIfAbsent(conversationId, id -> new Conversation());
+            synchronized (conversation) {
+                // 拿到锁之前会话已被删除，重新创建
+                if (conversation.deleted) {
+                    continue;
+                }
+                View view = conversation.view != null ? conversation.view : load(conversation);
+                int offset = view.size();
+                // 先编码并追加日志再发布视图：编码或写入失败时异常抛给调用方，读者看不到没有记入日志的消息
+                current = journal;
+                position = current == null ? -1 : current.appendMessages(conversationId, offset, messages);
+                conversation.append(view, messages);
+                break;
+            }
+        }
+        sync(current, position);
+    }
+
+    @Override
+    public List<Message> get(String conversationId, int lastN) {
+        Conversation conversation = conversations.get(conversationId);
+        if (conversation == null) {
+            return List.of();
+        }
+        View view = access(conversation);
+        return view.messages(Math.max(0, view.size() - lastN), view.size());
+    }
+
+    /**
+     * 按位置读取会话的一段消息 [from, to)，越界部分被截掉。
+     * 返回已发布视图上的只读区间，不复制消息，也不受之后写入的影响
+     */
+    public List<Message> range(String conversationId, int from, int to) {
+        Conversation conversation = conversations.get(conversationId);
+        if (conversation == null) {
+            return List.of();
+        }
+        View view = access(conversation);
+        int end = Math.min(to, view.size());
+        int start = Math.max(0, Math.min(from, end));
+        return view.messages(start, end);
+    }
+
+    @Override
+    public void clear(String conversationId) {
+        delete(conversationId);
+    }
+
+    /**
+     * 删除会话的全部消息
+     * @return 会话是否存在
+     */
+    public boolean delete(String conversationId) {
+        Conversation conversation = conversations.get(conversationId);
+        if (conversation == null) {
+            return false;
+        }
+        ChatMemoryJournal current;
+        long position;
+        synchronized (conversation) {
+            if (conversation.deleted) {
+                return false;
+            }
+            conversation.deleted = true;
+            conversations.remove(conversationId, conversation);
+            if (conversation.view != null) {
+                hotBytes.addAndGet(-conversation.bytes);
+            } else {
+                deleteSpillFile(conversation);
+            }
+            current = journal;
+            position = current == null ? -1 : current.appendClear(conversationId);
+        }
+        sync(current, position);
+        deleteListeners.forEach(listener -> listener.accept(conversationId));
+        return true;
+    }
+
+    /**
+     * 注册会话删除的回调，在删除落盘之后、锁外调用
+     */
+    public void addDeleteListener(Consumer<String> listener) {
+        deleteListeners.add(listener);
+    }
+
+    /**
+     * 当前有消息的会话id
+     */
+    public Set<String> conversationIds() {
+        return Set.copyOf(conversations.keySet());
+    }
+
+    /**
+     * 会话当前的消息数，不会把溢出的会话载回内存
+     */
+    public int size(String conversationId) {
+        Conversation conversation = conversations.get(conversationId);
+        if (conversation == null) {
+            return 0;
+        }
+        View view = conversation.view;
+        return view != null ? view.size() : conversation.spilledSize;
+    }
+
+    /**
+     * 逐个会话遍历时点视图，用于保存快照。
+     * 内存中的会话只读已发布的视图，不复制消息也不阻塞写入；溢出的会话直接从磁盘读出，不载回内存
+     */
+    public void snapshot(BiConsumer<String, List<Message>> action) {
+        conversations.forEach((conversationId, conversation) -> {
+            View view = conversation.view;
+            if (view == null) {
+                synchronized (conversation) {
+                    view = conversation.view != null ? conversation.view
+                            : conversation.deleted ? EMPTY : readSpilled(conversation);
+                }
+            }
+            if (view.size() > 0) {
+                action.accept(conversationId, view.messages(0, view.size()));
+            }
+        });
+    }
+
+    /**
+     * 重放一条日志中的消息记录：跳过快照中已有的部分，只追加之后的消息；应在 {@link #attach} 之前调用
+     * @param offset 记录写入时会话中已有的消息数
+     */
+    public void restore(String conversationId, int offset, List<Message> messages) {
+        int size = size(conversationId);
+        if (size >= offset + messages.size()) {
+            return;
+        }
+        if (size < offset) {
+            log.warn("Chat memory journal is missing {} messages of conversation {}.", offset - size, conversationId);
+        }
+        add(conversationId, messages.subList(Math.max(0, size - offset), messages.size()));
+    }
+
+    /**
+     * 重放完成后挂上日志，之后的写入、删除都先记入日志再返回
+     */
+    public void attach(ChatMemoryJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * 停止记录日志，关闭前调用；之后的写入只保存在内存中
+     */
+    public void detach() {
+        this.journal = null;
+    }
+
+    /**
+     * 内存中会话的估算字节数
+     */
+    public long getHotBytes() {
+        return hotBytes.get();
+    }
+
+    @Override
+    public void close() {
+        if (spiller != null) {
+            spiller.shutdownNow();
+        }
+    }
+
+    /**
+     * 先写出空闲超时的会话，仍超出内存上限时按最久未访问继续写出
+     */
+    void sweep() {
+        long now = System.currentTimeMillis();
+        List<Conversation> hot = new ArrayList<>();
+        int spilled = 0;
+        for (Conversation conversation : conversations.values()) {
+            if (conversation.view == null) {
+                continue;
+            }
+            if (idleMillis > 0 && now - conversation.lastAccess > idleMillis) {
+                spilled += spill(conversation) ? 1 : 0;
+            } else {
+                hot.add(conversation);
+            }
+        }
+        if (maxHeapBytes > 0 && hotBytes.get() > maxHeapBytes) {
+            hot.sort(Comparator.comparingLong(conversation -> conversation.lastAccess));
+            for (Conversation conversation : hot) {
+                if (hotBytes.get() <= maxHeapBytes) {
+                    break;
+                }
+                spilled += spill(conversation) ? 1 : 0;
+            }
+        }
+        if (spilled > 0) {
+            log.debug("Spilled {} conversations to disk, {} KB left on heap.", spilled, hotBytes.get() / 1024);
+        }
+    }
+
+    private boolean spill(Conversation conversation) {
+        synchronized (conversation) {
+            View view = conversation.view;
+            if (conversation.deleted || view == null) {
+                return false;
+            }
+            Path file = spillFile(conversation);
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(temp))))) {
+                out.writeInt(view.size());
+                for (int i = 0; i < view.size(); i++) {
+                    MessageCodec.writeMessage(out, view.items()[i]);
+                }
+            } catch (IOException e) {
+                log.warn("Failed to spill conversation to {}, keeping it on heap.", file, e);
+                return false;
+            }
+            try {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                log.warn("Failed to spill conversation to {}, keeping it on heap.", file, e);
+                return false;
+            }
+            // 先写 spilledSize 再发布 view = null，无锁读到 null 的线程一定能看到正确的消息数
+            conversation.spilledSize = view.size();
+            conversation.view = null;
+            hotBytes.addAndGet(-conversation.bytes);
+            conversation.bytes = 0;
+            return true;
+        }
+    }
+
+    // 读取前记录访问时间，已溢出的会话载回内存
+    private View access(Conversation conversation) {
+        conversation.lastAccess = System.currentTimeMillis();
+        View view = conversation.view;
+        if (view == null) {
+            synchronized (conversation) {
+                view = conversation.view != null ? conversation.view
+                        : conversation.deleted ? EMPTY : load(conversation);
+            }
+        }
+        return view;
+    }
+
+    // 在会话锁内调用：把溢出的会话载回内存并删除溢出文件
+    private View load(Conversation conversation) {
+        View view = readSpilled(conversation);
+        long bytes = 0;
+        for (int i = 0; i < view.size(); i++) {
+            bytes += estimateBytes(view.items()[i]);
+        }
+        conversation.bytes = bytes;
+        hotBytes.addAndGet(bytes);
+        conversation.view = view;
+        conversation.lastAccess = System.currentTimeMillis();
+        deleteSpillFile(conversation);
+        return view;
+    }
+
+    // 在会话锁内调用：读出溢出文件，不改变会话状态
+    private View readSpilled(Conversation conversation) {
+        Path file = spillFile(conversation);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file))))) {
+            int size = in.readInt();
+            Message[] items = new Message[Math.max(size, INITIAL_CAPACITY)];
+            for (int i = 0; i < size; i++) {
+                items[i] = MessageCodec.readMessage(in);
+            }
+            return new View(items, size);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to load spilled conversation " + file, e);
+        }
+    }
+
+    private void deleteSpillFile(Conversation conversation) {
+        try {
+            Files.deleteIfExists(spillFile(conversation));
+        } catch (IOException e) {
+            log.warn("Failed to delete spilled conversation {}.", spillFile(conversation), e);
+        }
+    }
+
+    private Path spillFile(Conversation conversation) {
+        return spillDirectory.resolve(conversation.fileId + SPILL_SUFFIX);
+    }
+
+    // 上次运行留下的溢出文件已经没有对应的会话
+    private void clearSpillDirectory() {
+        try {
+            Files.createDirectories(spillDirectory);
+            try (Stream<Path> files = Files.list(spillDirectory)) {
+                for (Path file : files.filter(file -> file.getFileName().toString().matches("\\d+\\.bin(\\.tmp)?")).toList()) {
+                    Files.delete(file);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to prepare spill directory " + spillDirectory, e);
+        }
+    }
+
+    private static long estimateBytes(Message message) {
+        long chars = message.getText() == null ? 0 : message.getText().length();
+        if (message instanceof AssistantMessage assistant && assistant.hasToolCalls()) {
+            for (AssistantMessage.ToolCall toolCall : assistant.getToolCalls()) {
+                chars += toolCall.name().length() + (toolCall.arguments() == null ? 0 : toolCall.arguments().length());
+            }
+        }
+        if (message instanceof ToolResponseMessage toolResponse) {
+            for (ToolResponseMessage.ToolResponse response : toolResponse.getResponses()) {
+                chars += response.responseData() == null ? 0 : response.responseData().length();
+            }
+        }
+        return MESSAGE_OVERHEAD_BYTES + 2 * chars;
+    }
+
+    private static void sync(ChatMemoryJournal journal, long position) {
+        if (position >= 0) {
+            journal.sync(position);
+        }
+    }
+
+    /**
+     * 一个会话：写入、溢出与载回在会话锁内进行，读取只看已发布的视图；view 为 null 表示已写入磁盘
+     */
+    private final class Conversation {
+
+        private final long fileId = fileIds.incrementAndGet();
+
+        private volatile View view = new View(new Message[INITIAL_CAPACITY], 0);
+
+        private volatile long lastAccess = System.currentTimeMillis();
+
+        // 溢出时的消息数
+        private int spilledSize;
+
+        // view 中消息的估算字节数
+        private long bytes;
+
+        private boolean deleted;
+
+        private void append(View current, List<Message> messages) {
+            Message[] items = current.items();
+            int size = current.size() + messages.size();
+            if (size > items.length) {
+                items = Arrays.copyOf(items, Math.max(size, items.length * 2));
+            }
+            long added = 0;
+            for (int i = 0; i < messages.size(); i++) {
+                items[current.size() + i] = messages.get(i);
+                added += estimateBytes(messages.get(i));
+            }
+            bytes += added;
+            hotBytes.addAndGet(added);
+            lastAccess = System.currentTimeMillis();
+            view = new View(items, size);
+        }
+    }
+
+    /**
+     * 已发布的消息：items 的前 size 个位置不再修改
+     */
+    private record View(Message[] items, int size) {
+
+        private List<Message> messages(int from, int to) {
+            return Collections.unmodifiableList(Arrays.asList(items).subList(from, to));
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.steven.ai.memory;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.ai.chat.messages.*;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 会话消息的二进制编码，日志与溢出文件共用：
+ * <pre>
+ * 类型 | 文本 | metadata(JSON) | 工具调用数 | 每个：id | type | name | arguments | 工具返回数 | 每个：id | name | responseData
+ * </pre>
+ * 字符串为 [长度 4B][UTF-8]。
+ */
+final class MessageCodec {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static final TypeReference<HashMap<String, Object>> METADATA_TYPE = new TypeReference<>() {
+    };
+
+    // 防止实例化
+    private MessageCodec() {}
+
+    static void writeMessage(DataOutputStream out, Message message) throws IOException {
+        writeString(out, message.getMessageType().name());
+        writeString(out, message.getText());
+        writeString(out, OBJECT_MAPPER.writeValueAsString(message.getMetadata()));
+        List<AssistantMessage.ToolCall> toolCalls = message instanceof AssistantMessage assistant
+                ? assistant.getToolCalls() : List.of();
+        out.writeInt(toolCalls.size());
+        for (AssistantMessage.ToolCall toolCall : toolCalls) {
+            writeString(out, toolCall.id());
+            writeString(out, toolCall.type());
+            writeString(out, toolCall.name());
+            writeString(out, toolCall.arguments());
+        }
+        List<ToolResponseMessage.ToolResponse> responses = message instanceof ToolResponseMessage toolResponse
+                ? toolResponse.getResponses() : List.of();
+        out.writeInt(responses.size());
+        for (ToolResponseMessage.ToolResponse response : responses) {
+            writeString(out, response.id());
+            writeString(out, response.name());
+            writeString(out, response.responseData());
+        }
+    }
+
+    static Message readMessage(DataInputStream in) throws IOException {
+        MessageType type = MessageType.valueOf(readString(in));
+        String text = readString(in);
+        Map<String, Object> metadata = OBJECT_MAPPER.readValue(readString(in), METADATA_TYPE);
+        int toolCallCount = in.readInt();
+        List<AssistantMessage.ToolCall> toolCalls = new ArrayList<>(toolCallCount);
+        for (int i = 0; i < toolCallCount; i++) {
+            toolCalls.add(new AssistantMessage.ToolCall(readString(in), readString(in), readString(in), readString(in)));
+        }
+        int responseCount = in.readInt();
+        List<ToolResponseMessage.ToolResponse> responses = new ArrayList<>(responseCount);
+        for (int i = 0; i < responseCount; i++) {
+            responses.add(new ToolResponseMessage.ToolResponse(readString(in), readString(in), readString(in)));
+        }
+        return switch (type) {
+            case SYSTEM -> new SystemMessage(text);
+            case USER -> new UserMessage(text, List.of(), metadata);
+            case ASSISTANT -> new AssistantMessage(text, metadata, toolCalls, List.of());
+            case TOOL -> new ToolResponseMessage(responses, metadata);
+        };
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,277 @@
+package com.steven.ai.memory;
+
+import com.steven.ai.utils.TokenUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * 滚动摘要的 ChatMemory 装饰器。
+ * <p>
+ * 写入后若会话中尚未摘要部分的估算 token 数超过阈值，就在后台线程里用摘要模型把较早的消息连同上一份摘要
+ * 压缩成一段新摘要，最近 keepRecentMessages 条消息保持原样；请求线程从不等待摘要。
+ * 读取时返回“摘要 + 摘要之后的原始消息”，摘要以一条用户消息的形式放在最前面。
+ * <p>
+ * 完整历史仍保存在被装饰的会话记忆中，历史记录接口不受影响；摘要只保存在内存里，
+ * 会话被删除时通过 {@link #evict} 丢弃，消息被外部移除后，旧摘要在下次读取时校验失败并丢弃。
+ */
+@Slf4j
+public class SummarizingChatMemory implements ChatMemory, Closeable {
+
+    /**
+     * 摘要消息的 metadata 标记，TokenWindowChatMemory 据此总是保留摘要
+     */
+    public static final String SUMMARY_METADATA_KEY = "conversation_summary";
+
+    private static final String SUMMARY_PREFIX = "以下是本会话较早内容的摘要，请结合摘要理解后续对话：\n";
+
+    private static final String INSTRUCTION = """
+            你负责压缩一段对话的历史。请把“已有摘要”和“新增对话”合并成一份新的摘要，要求：
+            1) 保留用户的身份、称呼、偏好、约束条件，以及已经确定的结论、计划、预约、地点、日期、数字等关键事实；
+            2) 保留尚未解决的问题和用户最近的意图；
+            3) 省略寒暄、重复内容和工具返回的原始数据，只保留其中被用到的结论；
+            4) 使用中文，用第三人称陈述，不超过 %d 字，直接输出摘要正文。""";
+
+    // 推理模型（如 deepseek-r1）会把思考过程放在 <think> 标签里
+    private static final Pattern THINK = Pattern.compile("(?s)<think>.*?</think>");
+
+    // 单条消息写进摘要提示词时的字符数上限，避免工具返回的大段原始数据撑大提示词
+    private static final int MAX_MESSAGE_CHARS = 500;
+
+    private final ChatMemory delegate;
+
+    private final ChatModel summarizer;
+
+    private final ChatOptions options;
+
+    private final int triggerTokens;
+
+    private final int keepRecentMessages;
+
+    private final int maxSummaryChars;
+
+    private final Map<String, Summary> summaries = new ConcurrentHashMap<>();
+
+    // 正在后台摘要的会话，同一会话同时只有一个摘要任务
+    private final Set<String> running = ConcurrentHashMap.newKeySet();
+
+    private final ExecutorService executor;
+
+    /**
+     * @param delegate 保存完整历史的会话记忆
+     * @param summarizer 生成摘要的模型
+     * @param options 摘要请求的模型参数，null 表示使用模型默认配置
+     * @param triggerTokens 未摘要部分超过该估算 token 数时开始摘要
+     * @param keepRecentMessages 摘要时保持原样的最近消息数
+     * @param maxSummaryChars 摘要的字数上限
+     * @param threads 后台摘要线程数
+     */
+    public SummarizingChatMemory(ChatMemory delegate, ChatModel summarizer, ChatOptions options,
+                                 int triggerTokens, int keepRecentMessages, int maxSummaryChars, int threads) {
+        Assert.isTrue(triggerTokens > 0, "triggerTokens must be greater than 0");
+        Assert.isTrue(keepRecentMessages >= 0, "keepRecentMessages must not be negative");
+        Assert.isTrue(maxSummaryChars > 0, "maxSummaryChars must be greater than 0");
+        Assert.isTrue(threads > 0, "threads must be greater than 0");
+        this.delegate = delegate;
+        this.summarizer = summarizer;
+        this.options = options;
+        this.triggerTokens = triggerTokens;
+        this.keepRecentMessages = keepRecentMessages;
+        this.maxSummaryChars = maxSummaryChars;
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "chat-memory-summarizer-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+        delegate.add(conversationId, messages);
+        List<Message> history = delegate.get(conversationId, Integer.MAX_VALUE);
+        Summary summary = current(conversationId, history);
+        int tokens = 0;
+        int covered = summary == null ? 0 : summary.covered();
+        for (int i = covered; i < history.size() && tokens <= triggerTokens; i++) {
+            tokens += TokenUtils.estimate(history.get(i));
+        }
+        if (tokens > triggerTokens && running.add(conversationId)) {
+            try {
+                executor.execute(() -> summarize(conversationId));
+            } catch (RejectedExecutionException e) {
+                running.remove(conversationId);
+            }
+        }
+    }
+
+    @Override
+    public List<Message> get(String conversationId, int lastN) {
+        List<Message> history = delegate.get(conversationId, Integer.MAX_VALUE);
+        Summary summary = current(conversationId, history);
+        if (summary == null) {
+            return lastN >= history.size() ? history : history.subList(history.size() - lastN, history.size());
+        }
+        List<Message> recent = history.subList(Math.max(summary.covered(), history.size() - lastN), history.size());
+        List<Message> messages = new ArrayList<>(recent.size() + 1);
+        messages.add(new UserMessage(SUMMARY_PREFIX + summary.text(), List.of(),
+                Map.of(SUMMARY_METADATA_KEY, true)));
+        messages.addAll(recent);
+        return messages;
+    }
+
+    @Override
+    public void clear(String conversationId) {
+        delegate.clear(conversationId);
+        summaries.remove(conversationId);
+    }
+
+    /**
+     * 会话已在被装饰的会话记忆中删除（例如通过历史记录接口），丢弃其摘要
+     */
+    public void evict(String conversationId) {
+        summaries.remove(conversationId);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 是否为本类生成的摘要消息
+     */
+    public static boolean isSummary(Message message) {
+        return Boolean.TRUE.equals(message.getMetadata().get(SUMMARY_METADATA_KEY));
+    }
+
+    /**
+     * 会话当前的摘要；摘要与现有历史对不上（会话被清空、消息被外部移除）时丢弃并返回 null
+     */
+    private Summary current(String conversationId, List<Message> history) {
+        Summary summary = summaries.get(conversationId);
+        if (summary == null) {
+            return null;
+        }
+        if (summary.covered() > history.size() || !sameMessage(history.get(summary.covered() - 1), summary.last())) {
+            summaries.remove(conversationId, summary);
+            return null;
+        }
+        return summary;
+    }
+
+    private void summarize(String conversationId) {
+        try {
+            List<Message> history = delegate.get(conversationId, Integer.MAX_VALUE);
+            Summary previous = current(conversationId, history);
+            int covered = previous == null ? 0 : previous.covered();
+            // 保留最近的消息，并把边界前移到一条用户消息上，工具调用与工具返回不会被拆开
+            int boundary = history.size() - keepRecentMessages;
+            while (boundary > covered && boundary < history.size() && !(history.get(boundary) instanceof UserMessage)) {
+                boundary--;
+            }
+            if (boundary <= covered) {
+                return;
+            }
+            String text = call(previous == null ? null : previous.text(), history.subList(covered, boundary));
+            if (!StringUtils.hasText(text)) {
+                return;
+            }
+            Summary summary = new Summary(text, boundary, history.get(boundary - 1));
+            // 摘要期间会话被清空或已有更新的摘要时放弃本次结果
+            summaries.compute(conversationId, (id, current) -> current == previous ? summary : current);
+            // 摘要期间会话被删除：删除回调可能已先执行，这里补一次清理
+            if (delegate.get(conversationId, 1).isEmpty()) {
+                summaries.remove(conversationId, summary);
+            }
+            log.debug("Summarized conversation {}: {} messages -> {} chars", conversationId, boundary, text.length());
+        } catch (RuntimeException e) {
+            log.warn("Failed to summarize conversation {}, keeping full history: {}", conversationId, e.getMessage());
+        } finally {
+            running.remove(conversationId);
+        }
+    }
+
+    private String call(String previous, List<Message> messages) {
+        StringBuilder transcript = new StringBuilder();
+        transcript.append("已有摘要：\n").append(previous == null ? "（无）" : previous).append("\n\n新增对话：\n");
+        for (Message message : messages) {
+            appendMessage(transcript, message);
+        }
+        Prompt prompt = new Prompt(List.of(
+                new SystemMessage(INSTRUCTION.formatted(maxSummaryChars)),
+                new UserMessage(transcript.toString())), options);
+        ChatResponse response = summarizer.call(prompt);
+        if (response == null || response.getResult() == null) {
+            return null;
+        }
+        String text = response.getResult().getOutput().getText();
+        return text == null ? null : THINK.matcher(text).replaceAll("").trim();
+    }
+
+    // 会话写入磁盘再载回后消息是新对象，按类型和文本比较
+    private static boolean sameMessage(Message a, Message b) {
+        return a == b || (a.getMessageType() == b.getMessageType() && Objects.equals(a.getText(), b.getText()));
+    }
+
+    private static void appendMessage(StringBuilder transcript, Message message) {
+        if (message instanceof ToolResponseMessage toolResponse) {
+            for (ToolResponseMessage.ToolResponse response : toolResponse.getResponses()) {
+                transcript.append("工具 ").append(response.name()).append(" 返回：")
+                        .append(abbreviate(response.responseData())).append('\n');
+            }
+            return;
+        }
+        if (message instanceof AssistantMessage assistant && assistant.hasToolCalls()) {
+            for (AssistantMessage.ToolCall toolCall : assistant.getToolCalls()) {
+                transcript.append("助手调用工具 ").append(toolCall.name()).append('：')
+                        .append(abbreviate(toolCall.arguments())).append('\n');
+            }
+        }
+        if (!StringUtils.hasText(message.getText())) {
+            return;
+        }
+        String role = switch (message.getMessageType()) {
+            case USER -> "用户";
+            case ASSISTANT -> "助手";
+            default -> "系统";
+        };
+        transcript.append(role).append('：').append(abbreviate(message.getText())).append('\n');
+    }
+
+    private static String abbreviate(String text) {
+        if (text == null || text.length() <= MAX_MESSAGE_CHARS) {
+            return text;
+        }
+        return text.substring(0, MAX_MESSAGE_CHARS) + "…";
+    }
+
+    /**
+     * 一份摘要：覆盖历史中前 covered 条消息，last 为其中最后一条，用于校验历史是否仍是摘要时的那一份
+     */
+    private record Summary(String text, int covered, Message last) {
+    }
+}
@@ -0,0 +1,117 @@
+package com.steven.ai.memory;
+
+import com.steven.ai.utils.TokenUtils;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 按 token 预算截取最近消息的 ChatMemory 装饰器。
+ * <p>
+ * 写入、清空直接交给被装饰的会话记忆，完整历史仍然保留；读取时从最新的消息往前累加估算的 token 数，
+ * 只返回预算内的最近若干条，发给模型的上下文不再随对话长度无限增长。
+ * 带工具调用的助手消息与其后的工具返回消息作为一个整体，要么一起保留、要么一起丢弃，
+ * 窗口开头不会出现缺少调用方的工具返回。
+ * 开头的会话摘要（见 {@link SummarizingChatMemory}）总是保留，其 token 数计入预算。
+ */
+public class TokenWindowChatMemory implements ChatMemory {
+
+    private final ChatMemory delegate;
+
+    private final int maxTokens;
+
+    /**
+     * @param delegate 保存完整历史的会话记忆
+     * @param maxTokens 返回的历史消息估算 token 数上限
+     */
+    public TokenWindowChatMemory(ChatMemory delegate, int maxTokens) {
+        Assert.isTrue(maxTokens > 0, "maxTokens must be greater than 0");
+        this.delegate = delegate;
+        this.maxTokens = maxTokens;
+    }
+
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+        delegate.add(conversationId, messages);
+    }
+
+    @Override
+    public List<Message> get(String conversationId, int lastN) {
+        List<Message> messages = delegate.get(conversationId, lastN);
+        if (messages == null || messages.isEmpty()) {
+            return messages;
+        }
+        Message summary = SummarizingChatMemory.isSummary(messages.get(0)) ? messages.get(0) : null;
+        int first = summary == null ? 0 : 1;
+        // 从最新的消息往前，以“消息或工具调用组”为单位累加，超出预算即停止
+        List<Message> window = new ArrayList<>();
+        int tokens = summary == null ? 0 : TokenUtils.estimate(summary);
+        int end = messages.size();
+        while (end > first) {
+            int start = unitStart(messages, first, end);
+            if (start < 0) {
+                // 更早的是缺少调用方的工具返回，丢弃
+                break;
+            }
+            if (start == end - 1 && isToolCall(messages.get(start))) {
+                // 没有工具返回的工具调用（调用中途失败）不能单独发给模型，跳过
+                end = start;
+                continue;
+            }
+            int unitTokens = 0;
+            for (int i = start; i < end; i++) {
+                unitTokens += TokenUtils.estimate(messages.get(i));
+            }
+            if (tokens + unitTokens > maxTokens) {
+                break;
+            }
+            tokens += unitTokens;
+            for (int i = end - 1; i >= start; i--) {
+                window.add(messages.get(i));
+            }
+            end = start;
+        }
+        if (summary != null) {
+            window.add(summary);
+        }
+        if (window.size() == messages.size()) {
+            return messages;
+        }
+        Collections.reverse(window);
+        return window;
+    }
+
+    @Override
+    public void clear(String conversationId) {
+        delegate.clear(conversationId);
+    }
+
+    public int getMaxTokens() {
+        return maxTokens;
+    }
+
+    /**
+     * [first, end) 中以最后一条消息结尾的单元的起点：工具返回向前归到发起调用的助手消息，其余消息自成一个单元
+     * @return 单元起点；工具返回前找不到发起调用的助手消息时返回 -1
+     */
+    private static int unitStart(List<Message> messages, int first, int end) {
+        int i = end - 1;
+        while (i >= first && messages.get(i) instanceof ToolResponseMessage) {
+            i--;
+        }
+        if (i == end - 1) {
+            return i;
+        }
+        return i >= first && isToolCall(messages.get(i)) ? i : -1;
+    }
+
+    private static boolean isToolCall(Message message) {
+        return message instanceof AssistantMessage assistant && assistant.hasToolCalls();
+    }
+}
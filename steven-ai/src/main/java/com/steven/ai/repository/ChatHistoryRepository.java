@@ -1,5 +1,7 @@
 package com.steven.ai.repository;
 
+import com.steven.ai.entity.vo.ChatIdPageVO;
+
 import java.util.List;
 
 public interface ChatHistoryRepository {
@@ -18,6 +20,15 @@ public interface ChatHistoryRepository {
      */
     List<String> getChatIds(String type);
 
+    /**
+     * 分页获取会话ID，按创建时间从新到旧
+     * @param type 业务类型，如：chat、service、pdf
+     * @param cursor 上一页返回的游标，为空表示第一页
+     * @param limit 每页条数
+     * @return 本页会话ID及下一页游标
+     */
+    ChatIdPageVO getChatIds(String type, String cursor, int limit);
+
     /**
      * 删除指定类型下的某个会话
      * @param type 业务类型
@@ -0,0 +1,153 @@
+package com.steven.ai.repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 一个业务类型下的会话id集合：并发、按创建顺序排列，记录每个会话的最后活跃时间。
+ * <p>
+ * 按id查找走哈希表，每次请求的“保存会话”只是一次查找加一次时间戳写入；
+ * 新会话分配递增序号并放入按序号排序的跳表，分页从游标序号处继续遍历，不需要复制整个列表。
+ */
+public class ChatIdRegistry {
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final ConcurrentSkipListMap<Long, Entry> order = new ConcurrentSkipListMap<>();
+
+    /**
+     * 一个会话id，sequence 为创建顺序
+     */
+    public static final class Entry {
+
+        private final String chatId;
+
+        private final long sequence;
+
+        private volatile long lastActiveAt;
+
+        private volatile boolean removed;
+
+        private Entry(String chatId, long sequence, long lastActiveAt) {
+            this.chatId = chatId;
+            this.sequence = sequence;
+            this.lastActiveAt = lastActiveAt;
+        }
+
+        public String getChatId() {
+            return chatId;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public long getLastActiveAt() {
+            return lastActiveAt;
+        }
+
+        private void touch(long timestamp) {
+            if (timestamp > lastActiveAt) {
+                lastActiveAt = timestamp;
+            }
+        }
+    }
+
+    /**
+     * 记录会话活跃，不存在时追加到末尾
+     * @return 是否为新会话；新建后立即被并发删除时返回 false
+     */
+    public boolean touch(String chatId, long timestamp) {
+        Entry entry = entries.get(chatId);
+        if (entry != null) {
+            entry.touch(timestamp);
+            return false;
+        }
+        Entry created = new Entry(chatId, sequence.incrementAndGet(), timestamp);
+        Entry existing = entries.putIfAbsent(chatId, created);
+        if (existing != null) {
+            existing.touch(timestamp);
+            return false;
+        }
+        order.put(created.sequence, created);
+        // 放入跳表之前已被并发删除，撤回；删除已生效，不算新会话，调用方不应再记录创建
+        if (created.removed) {
+            order.remove(created.sequence, created);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return 会话是否存在
+     */
+    public boolean remove(String chatId) {
+        Entry entry = entries.remove(chatId);
+        if (entry == null) {
+            return false;
+        }
+        entry.removed = true;
+        order.remove(entry.sequence, entry);
+        return true;
+    }
+
+    /**
+     * 删除全部会话
+     * @return 被删除的会话id
+     */
+    public List<String> clear() {
+        List<String> removed = new ArrayList<>();
+        for (Entry entry : order.values()) {
+            if (remove(entry.chatId)) {
+                removed.add(entry.chatId);
+            }
+        }
+        return removed;
+    }
+
+    public boolean contains(String chatId) {
+        return entries.containsKey(chatId);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * 按创建顺序的全部会话id
+     */
+    public List<String> chatIds() {
+        return order.values().stream().map(Entry::getChatId).toList();
+    }
+
+    /**
+     * 从新到旧分页
+     * @param before 游标：只返回序号小于它的会话，null 表示从最新的开始
+     * @param limit 每页条数
+     */
+    public List<Entry> page(Long before, int limit) {
+        NavigableMap<Long, Entry> range = before == null ? order.descendingMap() : order.headMap(before, false).descendingMap();
+        List<Entry> page = new ArrayList<>(Math.min(limit, 64));
+        for (Entry entry : range.values()) {
+            if (page.size() >= limit) {
+                break;
+            }
+            page.add(entry);
+        }
+        return page;
+    }
+
+    /**
+     * 按创建顺序的全部会话，用于保存快照
+     */
+    public List<Entry> entries() {
+        return List.copyOf(order.values());
+    }
+}
@@ -4,7 +4,7 @@ import org.springframework.core.io.Resource;
 
 public interface FileRepository {
     /**
-     * 保存文件,还要记录chatId与文件的映射关系
+     * 保存文件,还要记录chatId与文件的映射关系；文件按内容存放，内容相同的文件只保存一份
      * @param chatId 会话id
      * @param resource 文件
      * @return 上传成功，返回true； 否则返回false
@@ -17,4 +17,17 @@ public interface FileRepository {
      * @return 找到的文件
      */
     Resource getFile(String chatId);
-}
\ No newline at end of file
+
+    /**
+     * 根据chatId获取上传时的原始文件名
+     * @param chatId 会话id
+     * @return 原始文件名
+     */
+    String getFilename(String chatId);
+
+    /**
+     * 删除chatId与文件的映射关系，文件不再被任何会话引用时由后台清理
+     * @param chatId 会话id
+     */
+    void delete(String chatId);
+}
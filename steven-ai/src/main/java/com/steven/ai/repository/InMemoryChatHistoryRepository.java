@@ -1,172 +1,332 @@
 package com.steven.ai.repository;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.ObjectWriter;
+import com.steven.ai.config.ChatMemoryProperties;
 import com.steven.ai.entity.po.Msg;
+import com.steven.ai.entity.vo.ChatIdPageVO;
+import com.steven.ai.entity.vo.ChatIdVO;
+import com.steven.ai.memory.ChatMemoryJournal;
+import com.steven.ai.memory.ConcurrentChatMemory;
+import com.steven.ai.utils.ExecutorUtils;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.ai.chat.memory.ChatMemory;
-import org.springframework.ai.chat.memory.InMemoryChatMemory;
 import org.springframework.ai.chat.messages.Message;
-import org.springframework.core.io.FileSystemResource;
 import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
 
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.lang.reflect.Field;
-import java.nio.charset.StandardCharsets;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
 
 @Slf4j
 @Component
 @RequiredArgsConstructor
 public class InMemoryChatHistoryRepository implements ChatHistoryRepository {
 
-    private Map<String, List<String>> chatHistory;
+    private static final Path HISTORY_FILE = Path.of("chat-history.json");
+
+    private static final Path MEMORY_FILE = Path.of("chat-memory.json");
+
+    // 业务类型 -> 该类型下的会话id
+    private final Map<String, ChatIdRegistry> chatHistory = new ConcurrentHashMap<>();
 
     private final ObjectMapper objectMapper;
 
-    private final ChatMemory chatMemory;
+    private final ConcurrentChatMemory chatMemory;
+
+    private final ChatMemoryProperties chatMemoryProperties;
+
+    private final Object checkpointMonitor = new Object();
+
+    private volatile ChatMemoryJournal journal;
+
+    private ScheduledExecutorService snapshotter;
 
     @Override
     public void save(String type, String chatId) {
-        /*if (!chatHistory.containsKey(type)) {
-            chatHistory.put(type, new ArrayList<>());
-        }
-        List<String> chatIds = chatHistory.get(type);*/
-        List<String> chatIds = chatHistory.computeIfAbsent(type, k -> new ArrayList<>());
-        if (chatIds.contains(chatId)) {
-            return;
+        long now = System.currentTimeMillis();
+        // 已有会话只更新活跃时间，新会话才记日志
+        ChatIdRegistry registry = registry(type);
+        if (registry.touch(chatId, now)) {
+            record(journal -> journal.appendSaveChat(type, chatId, now));
+            // 记日志期间被并发删除：删除记录可能排在创建记录之前，补记一次删除，重放时不会复活
+            if (!registry.contains(chatId)) {
+                record(journal -> journal.appendDeleteChat(type, chatId));
+            }
         }
-        chatIds.add(chatId);
     }
 
     @Override
     public List<String> getChatIds(String type) {
-        /*List<String> chatIds = chatHistory.get(type);
-        return chatIds == null ? List.of() : chatIds;*/
-        return chatHistory.getOrDefault(type, List.of());
+        ChatIdRegistry registry = chatHistory.get(type);
+        return registry == null ? List.of() : registry.chatIds();
+    }
+
+    @Override
+    public ChatIdPageVO getChatIds(String type, String cursor, int limit) {
+        Long before = null;
+        if (StringUtils.hasText(cursor)) {
+            try {
+                before = Long.parseLong(cursor);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor);
+            }
+        }
+        ChatIdRegistry registry = chatHistory.get(type);
+        if (registry == null) {
+            return new ChatIdPageVO(List.of(), null);
+        }
+        // 多取一条判断是否还有下一页
+        List<ChatIdRegistry.Entry> entries = registry.page(before, limit + 1);
+        String nextCursor = null;
+        if (entries.size() > limit) {
+            entries = entries.subList(0, limit);
+            nextCursor = String.valueOf(entries.get(limit - 1).getSequence());
+        }
+        return new ChatIdPageVO(entries.stream().map(ChatIdVO::new).toList(), nextCursor);
     }
 
     @Override
     public void delete(String type, String chatId) {
-        List<String> chatIds = chatHistory.get(type);
-        if (chatIds != null) {
-            chatIds.remove(chatId);
+        ChatIdRegistry registry = chatHistory.get(type);
+        if (registry != null && registry.remove(chatId)) {
+            record(journal -> journal.appendDeleteChat(type, chatId));
         }
         // 同时清空该 chatId 的内存消息
-        removeFromMemory(chatId);
+        chatMemory.delete(chatId);
     }
 
     @Override
     public void clear(String type) {
-        List<String> chatIds = chatHistory.get(type);
-        if (chatIds != null) {
-            // 清空所有相关 chatId 的内存消息
-            for (String id : new ArrayList<>(chatIds)) {
-                removeFromMemory(id);
-            }
-            chatIds.clear();
+        ChatIdRegistry registry = chatHistory.get(type);
+        if (registry == null) {
+            return;
         }
+        List<String> chatIds = registry.clear();
+        record(journal -> journal.appendClearType(type));
+        // 清空所有相关 chatId 的内存消息
+        chatIds.forEach(chatMemory::delete);
     }
 
-    private void removeFromMemory(String chatId) {
-        // 通过反射删除 InMemoryChatMemory 中的会话
-        try {
-            Class<InMemoryChatMemory> clazz = InMemoryChatMemory.class;
-            Field field = clazz.getDeclaredField("conversationHistory");
-            field.setAccessible(true);
-            @SuppressWarnings("unchecked")
-            Map<String, List<Message>> memory = (Map<String, List<Message>>) field.get(chatMemory);
-            if (memory != null) {
-                memory.remove(chatId);
-            }
-        } catch (NoSuchFieldException | IllegalAccessException e) {
-            throw new RuntimeException(e);
-        }
+    private ChatIdRegistry registry(String type) {
+        return chatHistory.computeIfAbsent(type, k -> new ChatIdRegistry());
     }
 
+    // 会话列表的变更记入日志并等待落盘
+    private void record(ToLongFunction<ChatMemoryJournal> append) {
+        ChatMemoryJournal current = journal;
+        if (current != null) {
+            current.sync(append.applyAsLong(current));
+        }
+    }
 
     @PostConstruct
     private void init() {
-        // 1.初始化会话历史记录
-        this.chatHistory = new HashMap<>();
-        // 2.读取本地会话历史和会话记忆
-        FileSystemResource historyResource = new FileSystemResource("chat-history.json");
-        FileSystemResource memoryResource = new FileSystemResource("chat-memory.json");
-        if (!historyResource.exists()) {
-            return;
-        }
+        // 1.读取本地快照中的会话历史和会话记忆
         try {
-            // 会话历史
-            Map<String, List<String>> chatIds = this.objectMapper.readValue(historyResource.getInputStream(), new TypeReference<>() {
-            });
-            if (chatIds != null) {
-                this.chatHistory = chatIds;
+            if (Files.exists(HISTORY_FILE)) {
+                try (InputStream in = Files.newInputStream(HISTORY_FILE)) {
+                    Map<String, List<JsonNode>> chatIds = this.objectMapper.readValue(in, new TypeReference<>() {
+                    });
+                    if (chatIds != null) {
+                        chatIds.forEach(this::restoreChatIds);
+                    }
+                }
             }
-            // 会话记忆
-            Map<String, List<Msg>> memory = this.objectMapper.readValue(memoryResource.getInputStream(), new TypeReference<>() {
-            });
-            if (memory != null) {
-                memory.forEach(this::convertMsgToMessage);
+            if (Files.exists(MEMORY_FILE)) {
+                try (InputStream in = Files.newInputStream(MEMORY_FILE)) {
+                    Map<String, List<Msg>> memory = this.objectMapper.readValue(in, new TypeReference<>() {
+                    });
+                    if (memory != null) {
+                        memory.forEach(this::convertMsgToMessage);
+                    }
+                }
             }
         } catch (IOException ex) {
             throw new RuntimeException(ex);
         }
+        // 2.重放快照之后的日志，之后的每次变更都先追加到日志
+        ChatMemoryProperties.Journal settings = chatMemoryProperties.getJournal();
+        if (!settings.isEnabled()) {
+            return;
+        }
+        ChatMemoryJournal journal = new ChatMemoryJournal(Path.of(settings.getFile()));
+        int records = journal.replay(new ChatMemoryJournal.Replayer() {
+            @Override
+            public void messages(String conversationId, int offset, List<Message> messages) {
+                chatMemory.restore(conversationId, offset, messages);
+            }
+
+            @Override
+            public void clear(String conversationId) {
+                chatMemory.delete(conversationId);
+            }
+
+            @Override
+            public void saveChat(String type, String chatId, long timestamp) {
+                registry(type).touch(chatId, timestamp);
+            }
+
+            @Override
+            public void deleteChat(String type, String chatId) {
+                registry(type).remove(chatId);
+            }
+
+            @Override
+            public void clearType(String type) {
+                registry(type).clear();
+            }
+        });
+        chatMemory.attach(journal);
+        this.journal = journal;
+        if (records > 0) {
+            log.info("Replayed {} chat memory journal records.", records);
+            checkpoint();
+        }
+        startSnapshotter(settings);
+    }
+
+    // 快照中的会话为 {chatId, lastActiveAt}；旧版本只保存了会话id字符串，活跃时间记为 0
+    private void restoreChatIds(String type, List<JsonNode> chatIds) {
+        ChatIdRegistry registry = registry(type);
+        for (JsonNode node : chatIds) {
+            if (node.isTextual()) {
+                registry.touch(node.asText(), 0);
+            } else {
+                registry.touch(node.path("chatId").asText(), node.path("lastActiveAt").asLong());
+            }
+        }
     }
 
     private void convertMsgToMessage(String chatId, List<Msg> messages) {
         this.chatMemory.add(chatId, messages.stream().map(Msg::toMessage).toList());
     }
 
-    @PreDestroy
-    private void persistent() {
-        String history = toJsonString(this.chatHistory);
-        String memory = getMemoryJsonString();
-        FileSystemResource historyResource = new FileSystemResource("chat-history.json");
-        FileSystemResource memoryResource = new FileSystemResource("chat-memory.json");
-        try (
-                PrintWriter historyWriter = new PrintWriter(historyResource.getOutputStream(), true, StandardCharsets.UTF_8);
-                PrintWriter memoryWriter = new PrintWriter(memoryResource.getOutputStream(), true, StandardCharsets.UTF_8)
-        ) {
-            historyWriter.write(history);
-            memoryWriter.write(memory);
-        } catch (IOException ex) {
-            log.error("IOException occurred while saving vector store file.", ex);
-            throw new RuntimeException(ex);
-        } catch (SecurityException ex) {
-            log.error("SecurityException occurred while saving vector store file.", ex);
-            throw new RuntimeException(ex);
-        } catch (NullPointerException ex) {
-            log.error("NullPointerException occurred while saving vector store file.", ex);
-            throw new RuntimeException(ex);
+    // 日志超过阈值时保存快照并删除旧日志
+    private void startSnapshotter(ChatMemoryProperties.Journal settings) {
+        long threshold = settings.getSnapshotThresholdMb() * 1024L * 1024L;
+        snapshotter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "chat-memory-snapshotter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        snapshotter.scheduleWithFixedDelay(() -> {
+            try {
+                if (journal.size() > threshold) {
+                    checkpoint();
+                }
+            } catch (RuntimeException e) {
+                log.error("Failed to snapshot chat memory.", e);
+            }
+        }, settings.getSnapshotIntervalSeconds(), settings.getSnapshotIntervalSeconds(), TimeUnit.SECONDS);
+    }
+
+    /**
+     * 切换到新一代日志，保存快照，再删除旧日志。
+     * 保存期间的变更会同时出现在快照和新日志中，重放时按消息数跳过已有的消息，结果不变
+     */
+    private void checkpoint() {
+        synchronized (checkpointMonitor) {
+            long generation = journal.rotate();
+            writeSnapshot();
+            journal.deleteBefore(generation);
         }
     }
 
-    private String getMemoryJsonString() {
-        Class<InMemoryChatMemory> clazz = InMemoryChatMemory.class;
+    // 逐个会话流式写出紧凑 JSON，不在内存中拼出整个快照字符串；先写临时文件再原子替换
+    private void writeSnapshot() {
+        writeAtomically(HISTORY_FILE, generator -> {
+            generator.writeStartObject();
+            for (Map.Entry<String, ChatIdRegistry> entry : chatHistory.entrySet()) {
+                generator.writeFieldName(entry.getKey());
+                generator.writeStartArray();
+                for (ChatIdRegistry.Entry chat : entry.getValue().entries()) {
+                    generator.writeStartObject();
+                    generator.writeStringField("chatId", chat.getChatId());
+                    generator.writeNumberField("lastActiveAt", chat.getLastActiveAt());
+                    generator.writeEndObject();
+                }
+                generator.writeEndArray();
+            }
+            generator.writeEndObject();
+        });
+        writeAtomically(MEMORY_FILE, generator -> {
+            generator.writeStartObject();
+            try {
+                chatMemory.snapshot((chatId, messages) -> {
+                    try {
+                        generator.writeFieldName(chatId);
+                        generator.writeStartArray();
+                        for (Message message : messages) {
+                            objectMapper.writeValue(generator, new Msg(message));
+                        }
+                        generator.writeEndArray();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            generator.writeEndObject();
+        });
+    }
+
+    private interface SnapshotWriter {
+
+        void write(JsonGenerator generator) throws IOException;
+    }
+
+    private void writeAtomically(Path file, SnapshotWriter writer) {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
         try {
-            Field field = clazz.getDeclaredField("conversationHistory");
-            field.setAccessible(true);
-            Map<String, List<Message>> memory = (Map<String, List<Message>>) field.get(chatMemory);
-            Map<String, List<Msg>> memoryToSave = new HashMap<>();
-            memory.forEach((chatId, messages) -> memoryToSave.put(chatId, messages.stream().map(Msg::new).toList()));
-            return toJsonString(memoryToSave);
-        } catch (NoSuchFieldException | IllegalAccessException e) {
-            throw new RuntimeException(e);
+            try (FileOutputStream out = new FileOutputStream(temp.toFile())) {
+                JsonGenerator generator = objectMapper.getFactory().createGenerator(new BufferedOutputStream(out));
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                writer.write(generator);
+                generator.close();
+                out.getFD().sync();
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            log.error("IOException occurred while saving chat memory snapshot {}.", file, ex);
+            throw new RuntimeException(ex);
         }
     }
 
-    private String toJsonString(Object object) {
-        ObjectWriter objectWriter = this.objectMapper.writerWithDefaultPrettyPrinter();
+    @PreDestroy
+    private void persistent() {
+        // 开启日志时每次变更都已落盘，退出时只需关闭日志，不再整体保存
+        if (journal == null) {
+            writeSnapshot();
+            return;
+        }
+        // 等进行中的快照写完，不中断线程：中断会关闭日志的文件通道
+        ExecutorUtils.awaitShutdown(snapshotter);
+        chatMemory.detach();
+        // 先摘下日志再关闭，关闭之后迟到的保存、删除只改内存，不再写入已关闭的通道
+        ChatMemoryJournal current = journal;
+        journal = null;
         try {
-            return objectWriter.writeValueAsString(object);
-        } catch (JsonProcessingException e) {
-            throw new RuntimeException("Error serializing documentMap to JSON.", e);
+            current.close();
+        } catch (IOException ex) {
+            log.error("Failed to close chat memory journal.", ex);
         }
     }
 }
@@ -1,11 +1,18 @@
 package com.steven.ai.repository;
 
+import com.steven.ai.config.VectorStoreProperties;
+import com.steven.ai.ingestion.IngestionJobService;
+import com.steven.ai.utils.ExecutorUtils;
+import com.steven.ai.vectorstore.AbstractLocalVectorStore;
+import com.steven.ai.vectorstore.HnswVectorStore;
+import com.steven.ai.vectorstore.SegmentedVectorStore;
+import com.steven.ai.vectorstore.WriteAheadLog;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.ai.vectorstore.SimpleVectorStore;
 import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
 import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Component;
@@ -14,36 +21,92 @@ import org.springframework.web.multipart.MultipartFile;
 import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
+import java.util.Set;
+import java.util.stream.Stream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 @Slf4j
 @Component
 @RequiredArgsConstructor
 public class LocalPdfFileRepository implements FileRepository {
 
+    private static final String VECTOR_SEGMENT_FILE = "chat-pdf.vec";
+
+    // 上传的 PDF 按内容哈希存放在该目录下：{sha256}.pdf
+    private static final String PDF_STORE_DIR = "pdf-store";
+
+    private static final String CHAT_FILE_NAMES = "chat-pdf-names.properties";
+
     private final VectorStore vectorStore;
 
+    private final VectorStoreProperties vectorStoreProperties;
+
+    private final IngestionJobService ingestionJobService;
+
     // 会话id 与 文件名的对应关系，方便查询会话历史时重新加载文件
     private final Properties chatFiles = new Properties();
 
+    // 文件 -> 引用它的会话数，由 chatFiles 推导，以下三个集合都在 this 上同步
+    private final Map<String, Integer> references = new HashMap<>();
+
+    // 待清理的文件：分区名（file_name） -> 磁盘路径
+    private final Map<String, Path> orphans = new HashMap<>();
+
+    // 会话id 与 上传时的原始文件名，下载时使用
+    private final Properties chatFileNames = new Properties();
+
+    // 写前日志，未开启时为 null
+    private WriteAheadLog writeAheadLog;
+
+    private ScheduledExecutorService compactor;
+
+    private ScheduledExecutorService sweeper;
+
     @Override
     public boolean save(String chatId, Resource resource) {
-        // 1.保存到本地磁盘
-        String filename = resource.getFilename();
-        File target = new File(Objects.requireNonNull(filename));
-        if (!target.exists()) {
+        // 1.边读边算 SHA-256 写入临时文件，不持有锁，大文件上传不阻塞其他上传、删除和清理
+        Path dir;
+        Path temp;
+        String hash;
+        try {
+            dir = Files.createDirectories(Path.of(PDF_STORE_DIR));
+            temp = Files.createTempFile(dir, "upload-", ".tmp");
+        } catch (IOException e) {
+            log.error("Failed to save PDF resource.", e);
+            return false;
+        }
+        try {
             try {
-                Files.copy(resource.getInputStream(), target.toPath());
+                hash = hashInto(resource, temp);
             } catch (IOException e) {
                 log.error("Failed to save PDF resource.", e);
                 return false;
             }
+            // 2.加锁后按内容哈希落位并保存映射关系，与清理互斥
+            synchronized (this) {
+                return storeByContent(chatId, resource, temp, dir.resolve(hash + ".pdf"));
+            }
+        } finally {
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException e) {
+                log.warn("Failed to delete temporary upload {}.", temp, e);
+            }
         }
-        // 2.保存映射关系
-        chatFiles.put(chatId, filename);
-        return true;
     }
 
     @Override
@@ -51,31 +114,315 @@ public class LocalPdfFileRepository implements FileRepository {
         return new FileSystemResource(chatFiles.getProperty(chatId));
     }
 
+    @Override
+    public synchronized void delete(String chatId) {
+        Object file = chatFiles.remove(chatId);
+        chatFileNames.remove(chatId);
+        if (file == null) {
+            return;
+        }
+        release((String) file);
+        try {
+            storeChatFiles();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public String getFilename(String chatId) {
+        String filename = chatFileNames.getProperty(chatId);
+        return filename != null ? filename : getFile(chatId).getFilename();
+    }
+
+    /**
+     * 流式写入临时文件并计算哈希
+     * @return 文件内容的 SHA-256（十六进制）
+     */
+    private static String hashInto(Resource resource, Path temp) throws IOException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            try (InputStream in = new DigestInputStream(resource.getInputStream(), digest)) {
+                Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 在锁内调用：把临时文件移到按内容哈希命名的位置（已存在时丢弃临时文件），保存映射关系并立即落盘，
+     * 避免异常退出后会话找不到文件；会话换了文件时旧文件少一个引用
+     */
+    private boolean storeByContent(String chatId, Resource resource, Path temp, Path target) {
+        String name = target.getFileName().toString();
+        try {
+            if (Files.exists(target)) {
+                log.info("PDF {} already stored as {}", resource.getFilename(), target);
+            } else {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            }
+        } catch (IOException e) {
+            log.error("Failed to save PDF resource.", e);
+            return false;
+        }
+        String file = PDF_STORE_DIR + "/" + name;
+        Object previous = chatFiles.put(chatId, file);
+        retain(file);
+        if (previous != null) {
+            release((String) previous);
+        }
+        chatFileNames.put(chatId, Objects.requireNonNullElse(resource.getFilename(), name));
+        try {
+            storeChatFiles();
+        } catch (IOException e) {
+            log.error("Failed to save chat file mapping.", e);
+            return false;
+        }
+        return true;
+    }
+
     @PostConstruct
     private void init() {
-        FileSystemResource pdfResource = new FileSystemResource("chat-pdf.properties");
-        if (pdfResource.exists()) {
-            try {
-                chatFiles.load(new BufferedReader(new InputStreamReader(pdfResource.getInputStream(), StandardCharsets.UTF_8)));
+        loadProperties(chatFiles, "chat-pdf.properties");
+        loadProperties(chatFileNames, CHAT_FILE_NAMES);
+        // 引用数总是由映射关系推导，与是否开启清理无关
+        synchronized (this) {
+            chatFiles.values().forEach(file -> references.merge((String) file, 1, Integer::sum));
+        }
+        AbstractLocalVectorStore localVectorStore = (AbstractLocalVectorStore) vectorStore;
+        Path segmentPath = Path.of(VECTOR_SEGMENT_FILE);
+        FileSystemResource legacyResource = new FileSystemResource("chat-pdf.json");
+        boolean migrated = false;
+        if (Files.exists(segmentPath)) {
+            // 二进制段文件直接映射，不做解析
+            localVectorStore.load(segmentPath);
+        } else if (legacyResource.exists()) {
+            // 兼容旧版本的 JSON 文件，关闭时会改存为段文件
+            log.info("Migrating vector store from chat-pdf.json to {}", VECTOR_SEGMENT_FILE);
+            localVectorStore.load(legacyResource);
+            migrated = true;
+        }
+        VectorStoreProperties.Wal wal = vectorStoreProperties.getWal();
+        if (wal.isEnabled()) {
+            // 快照之后的写入都在日志里，按顺序重放
+            writeAheadLog = new WriteAheadLog(Path.of(wal.getFile()));
+            int records = localVectorStore.replay(writeAheadLog);
+            log.info("Replayed {} write-ahead log records, vector store size = {}", records, localVectorStore.size());
+            if (migrated) {
+                localVectorStore.checkpoint(segmentPath);
+            }
+            startCompactor(localVectorStore, segmentPath, wal);
+        }
+        if (localVectorStore.size() > 0) {
+            reportRecall(localVectorStore);
+        }
+        seedLegacyFiles();
+        VectorStoreProperties.Gc gc = vectorStoreProperties.getGc();
+        if (gc.isEnabled()) {
+            collectOrphans();
+            startSweeper(localVectorStore, segmentPath, gc);
+        }
+    }
+
+    // 旧版本按原始文件名存放、上传时同步导入，没有导入记录；记为已导入，旧会话提问时不会被当作未导入而重新导入
+    private synchronized void seedLegacyFiles() {
+        Set<String> legacy = new HashSet<>();
+        chatFiles.values().stream()
+                .map(String.class::cast)
+                .filter(file -> !file.startsWith(PDF_STORE_DIR + "/"))
+                .map(LocalPdfFileRepository::partitionOf)
+                .forEach(legacy::add);
+        if (legacy.isEmpty()) {
+            return;
+        }
+        try {
+            ingestionJobService.seedLegacy(legacy);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void retain(String file) {
+        references.merge(file, 1, Integer::sum);
+        orphans.remove(partitionOf(file));
+    }
+
+    // 引用数归零的文件加入待清理集合，由后台统一删除；未开启清理时没有后台任务消费，不加入
+    private void release(String file) {
+        if (references.merge(file, -1, Integer::sum) <= 0) {
+            references.remove(file);
+            if (vectorStoreProperties.getGc().isEnabled()) {
+                orphans.put(partitionOf(file), Path.of(file));
+            }
+        }
+    }
+
+    // 启动时找出上次运行遗留的孤儿：没有会话引用的已存文件，以及已导入但文件不再被引用的分区
+    private synchronized void collectOrphans() {
+        Map<String, Path> referenced = new HashMap<>();
+        references.keySet().forEach(file -> referenced.put(partitionOf(file), Path.of(file)));
+        Path store = Path.of(PDF_STORE_DIR);
+        if (Files.isDirectory(store)) {
+            try (Stream<Path> files = Files.list(store)) {
+                files.filter(file -> file.getFileName().toString().endsWith(".pdf"))
+                        .filter(file -> !referenced.containsKey(file.getFileName().toString()))
+                        .forEach(file -> orphans.put(file.getFileName().toString(), file));
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
         }
-        FileSystemResource vectorResource = new FileSystemResource("chat-pdf.json");
-        if (vectorResource.exists()) {
-            SimpleVectorStore simpleVectorStore = (SimpleVectorStore) vectorStore;
-            simpleVectorStore.load(vectorResource);
+        ingestionJobService.getIndexedFiles().stream()
+                .filter(partition -> !referenced.containsKey(partition))
+                .forEach(partition -> orphans.putIfAbsent(partition, store.resolve(partition)));
+        if (!orphans.isEmpty()) {
+            log.info("Found {} unreferenced PDF files to sweep", orphans.size());
+        }
+    }
+
+    // 定期删除孤儿文件的文档和磁盘文件；删除后压实日志，使快照与日志中不再保留这些文档
+    private void startSweeper(AbstractLocalVectorStore localVectorStore, Path segmentPath, VectorStoreProperties.Gc gc) {
+        sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "vector-store-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(() -> {
+            try {
+                int swept = sweep(localVectorStore);
+                if (swept > 0 && writeAheadLog != null) {
+                    localVectorStore.checkpoint(segmentPath);
+                }
+            } catch (Exception e) {
+                log.error("Failed to sweep unreferenced PDF files.", e);
+            }
+        }, gc.getIntervalSeconds(), gc.getIntervalSeconds(), TimeUnit.SECONDS);
+    }
+
+    /**
+     * 删除待清理文件在向量库中的文档以及磁盘上的文件；整个过程持有锁，期间上传同一内容的请求会等待清理完成后重新保存
+     * @return 清理的文件数
+     */
+    private synchronized int sweep(AbstractLocalVectorStore localVectorStore) throws IOException {
+        if (orphans.isEmpty()) {
+            return 0;
+        }
+        int before = localVectorStore.size();
+        int swept = 0;
+        var iterator = orphans.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Path> orphan = iterator.next();
+            String partition = orphan.getKey();
+            // 正在导入的文件等导入结束后再清理，否则清理之后导入还会继续写入
+            if (ingestionJobService.isIngesting(partition)) {
+                continue;
+            }
+            ingestionJobService.forget(partition);
+            localVectorStore.delete(new FilterExpressionBuilder().eq(AbstractLocalVectorStore.PARTITION_KEY, partition).build());
+            Files.deleteIfExists(orphan.getValue());
+            iterator.remove();
+            swept++;
+        }
+        if (swept > 0) {
+            log.info("Swept {} unreferenced PDF files, removed {} documents", swept, before - localVectorStore.size());
+        }
+        return swept;
+    }
+
+    private static String partitionOf(String file) {
+        return Path.of(file).getFileName().toString();
+    }
+
+    // 日志超过阈值时压实进快照，压实期间检索不受影响
+    private void startCompactor(AbstractLocalVectorStore localVectorStore, Path segmentPath, VectorStoreProperties.Wal wal) {
+        long threshold = wal.getCompactThresholdMb() * 1024L * 1024L;
+        compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "vector-store-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        compactor.scheduleWithFixedDelay(() -> {
+            try {
+                long size = writeAheadLog.size();
+                if (size >= threshold) {
+                    long start = System.currentTimeMillis();
+                    localVectorStore.checkpoint(segmentPath);
+                    log.info("Compacted {} bytes of write-ahead log into {} in {} ms", size, segmentPath, System.currentTimeMillis() - start);
+                }
+            } catch (Exception e) {
+                log.error("Failed to compact write-ahead log.", e);
+            }
+        }, wal.getCompactIntervalSeconds(), wal.getCompactIntervalSeconds(), TimeUnit.SECONDS);
+    }
+
+    // HNSW 与两阶段检索为近似检索，加载后与全维暴力扫描对比一次召回率，便于调整 m / ef、短向量维度与候选倍数
+    private void reportRecall(AbstractLocalVectorStore localVectorStore) {
+        int samples = vectorStoreProperties.getHnsw().getRecallSamples();
+        if (localVectorStore instanceof HnswVectorStore hnsw && samples > 0) {
+            log.info("HNSW index loaded, size = {}, recall@10 = {}", hnsw.size(), String.format("%.4f", hnsw.recall(samples, 10)));
+        }
+        VectorStoreProperties.Segmented segmented = vectorStoreProperties.getSegmented();
+        if (localVectorStore instanceof SegmentedVectorStore store && store.isTwoStage() && segmented.getRecallSamples() > 0) {
+            log.info("Segmented index loaded, size = {}, two-stage recall@10 = {} (prefix {} dims, candidates x{})", store.size(),
+                    String.format("%.4f", store.recall(segmented.getRecallSamples(), 10)),
+                    segmented.getPrefixDimensions(), segmented.getPrefixCandidateFactor());
         }
     }
 
     @PreDestroy
     private void persistent() {
         try {
-            chatFiles.store(new FileWriter("chat-pdf.properties"), LocalDateTime.now().toString());
-            SimpleVectorStore simpleVectorStore = (SimpleVectorStore) vectorStore;
-            simpleVectorStore.save(new File("chat-pdf.json"));
+            // 导入任务依赖的 bean 比本 bean 后销毁，此时仍可能在写入向量库；先等进行中的导入写完，再保存快照或关闭日志
+            ingestionJobService.shutdown();
+            // 等进行中的清理结束，避免保存快照时仍在删除分区
+            if (sweeper != null) {
+                ExecutorUtils.awaitShutdown(sweeper);
+            }
+            storeChatFiles();
+            AbstractLocalVectorStore localVectorStore = (AbstractLocalVectorStore) vectorStore;
+            if (writeAheadLog == null) {
+                // 向量落盘之后才记录期间导入的文件
+                Set<String> unsaved = ingestionJobService.getUnsavedFiles();
+                localVectorStore.save(Path.of(VECTOR_SEGMENT_FILE));
+                ingestionJobService.confirmSaved(unsaved);
+                return;
+            }
+            // 日志已落盘，退出时无需整体保存；先等进行中的压实结束，再关闭日志
+            ExecutorUtils.awaitShutdown(compactor);
+            localVectorStore.detachWriteAheadLog();
+            writeAheadLog.close();
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
-}
\ No newline at end of file
+
+    private synchronized void storeChatFiles() throws IOException {
+        storeProperties(chatFiles, "chat-pdf.properties");
+        storeProperties(chatFileNames, CHAT_FILE_NAMES);
+    }
+
+    // 先写临时文件并刷盘再原子替换：中途崩溃时旧文件保持完整，启动时不会因映射丢失把所有已存文件当作孤儿清理
+    private static void storeProperties(Properties properties, String file) throws IOException {
+        Path path = Path.of(file);
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp.toFile())) {
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            properties.store(writer, LocalDateTime.now().toString());
+            writer.flush();
+            out.getFD().sync();
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void loadProperties(Properties properties, String file) {
+        FileSystemResource resource = new FileSystemResource(file);
+        if (resource.exists()) {
+            try (Reader reader = new BufferedReader(new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8))) {
+                properties.load(reader);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+}
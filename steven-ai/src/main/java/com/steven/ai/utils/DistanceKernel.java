@@ -0,0 +1,17 @@
+package com.steven.ai.utils;
+
+/**
+ * 距离计算的内层循环，向量以 (数组, 起始下标) 表示，便于直接在按行连续存放的矩阵上计算
+ */
+interface DistanceKernel {
+
+    /**
+     * a[aOffset, aOffset + length) 与 b[bOffset, bOffset + length) 的点积
+     */
+    float dot(float[] a, int aOffset, float[] b, int bOffset, int length);
+
+    /**
+     * a[aOffset, aOffset + length) 与 b[bOffset, bOffset + length) 的欧氏距离平方
+     */
+    float squaredDistance(float[] a, int aOffset, float[] b, int bOffset, int length);
+}
@@ -0,0 +1,38 @@
+package com.steven.ai.utils;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 后台线程池的关闭。
+ * <p>
+ * 后台任务大多在读写文件通道（写前日志、快照、记录文件），中断线程会让 FileChannel 抛出 ClosedByInterruptException 并关闭通道，
+ * 之后的写入全部失败。因此关闭时先不中断，等进行中的任务结束，超时后才强制中断。
+ */
+@Slf4j
+public class ExecutorUtils {
+
+    // 关闭时等待进行中任务结束的时长
+    public static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+
+    // 防止实例化
+    private ExecutorUtils() {}
+
+    /**
+     * 停止接收新任务并等待已提交的任务结束，不中断线程；超时或等待被中断时才强制中断
+     */
+    public static void awaitShutdown(ExecutorService executor) {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                log.warn("Background task did not finish within {} seconds, shutting down anyway.", SHUTDOWN_TIMEOUT_SECONDS);
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.steven.ai.utils;
+
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+
+/**
+ * 本地 token 估算，不调用模型的分词器。
+ * <p>
+ * 中日韩字符按 1 个 token，其余字符按 4 个字符 1 个 token；用于分批、上下文裁剪这类只需量级正确的场景。
+ */
+public class TokenUtils {
+
+    // 每条消息的角色、分隔符等固定开销
+    private static final int MESSAGE_OVERHEAD = 4;
+
+    // 防止实例化
+    private TokenUtils() {}
+
+    /**
+     * 估算文本的 token 数
+     */
+    public static int estimate(String text) {
+        if (text == null) {
+            return 0;
+        }
+        int cjk = 0;
+        int other = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (Character.isIdeographic(text.charAt(i))) {
+                cjk++;
+            } else {
+                other++;
+            }
+        }
+        return cjk + (other + 3) / 4;
+    }
+
+    /**
+     * 估算一条消息发给模型时的 token 数，包括工具调用的名称、参数与工具返回的内容
+     */
+    public static int estimate(Message message) {
+        int tokens = MESSAGE_OVERHEAD + estimate(message.getText());
+        if (message instanceof AssistantMessage assistant && assistant.hasToolCalls()) {
+            for (AssistantMessage.ToolCall toolCall : assistant.getToolCalls()) {
+                tokens += MESSAGE_OVERHEAD + estimate(toolCall.name()) + estimate(toolCall.arguments());
+            }
+        }
+        if (message instanceof ToolResponseMessage toolResponse) {
+            for (ToolResponseMessage.ToolResponse response : toolResponse.getResponses()) {
+                tokens += MESSAGE_OVERHEAD + estimate(response.name()) + estimate(response.responseData());
+            }
+        }
+        return tokens;
+    }
+}
@@ -1,5 +1,14 @@
 package com.steven.ai.utils;
 
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 向量距离计算。
+ * <p>
+ * 除单对向量的距离外，还提供一个查询向量对按行连续存放的矩阵批量打分的方法，以及预先算好范数的余弦快速路径，
+ * 供各类向量库的检索内层循环使用。JVM 以 --add-modules jdk.incubator.vector 启动时使用 SIMD 实现，否则退回标量实现。
+ */
+@Slf4j
 public class VectorDistanceUtils {
     
     // 防止实例化
@@ -8,6 +17,10 @@ public class VectorDistanceUtils {
     // 浮点数计算精度阈值
     private static final double EPSILON = 1e-12;
 
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+
+    private static final DistanceKernel KERNEL = createKernel();
+
     /**
      * 计算欧氏距离
      * @param vectorA 向量A（非空且与B等长）
@@ -17,13 +30,8 @@ public class VectorDistanceUtils {
      */
     public static double euclideanDistance(float[] vectorA, float[] vectorB) {
         validateVectors(vectorA, vectorB);
-        
-        double sum = 0.0;
-        for (int i = 0; i < vectorA.length; i++) {
-            double diff = vectorA[i] - vectorB[i];
-            sum += diff * diff;
-        }
-        return Math.sqrt(sum);
+
+        return Math.sqrt(KERNEL.squaredDistance(vectorA, 0, vectorB, 0, vectorA.length));
     }
 
     /**
@@ -35,20 +43,11 @@ public class VectorDistanceUtils {
      */
     public static double cosineDistance(float[] vectorA, float[] vectorB) {
         validateVectors(vectorA, vectorB);
-        
-        double dotProduct = 0.0;
-        double normA = 0.0;
-        double normB = 0.0;
-        
-        for (int i = 0; i < vectorA.length; i++) {
-            dotProduct += vectorA[i] * vectorB[i];
-            normA += vectorA[i] * vectorA[i];
-            normB += vectorB[i] * vectorB[i];
-        }
-        
-        normA = Math.sqrt(normA);
-        normB = Math.sqrt(normB);
-        
+
+        double dotProduct = KERNEL.dot(vectorA, 0, vectorB, 0, vectorA.length);
+        double normA = norm(vectorA);
+        double normB = norm(vectorB);
+
         // 处理零向量情况
         if (normA < EPSILON || normB < EPSILON) {
             throw new IllegalArgumentException("Vectors cannot be zero vectors");
@@ -61,6 +60,154 @@ public class VectorDistanceUtils {
         return similarity;
     }
 
+    /**
+     * 计算点积
+     * @param vectorA 向量A（非空且与B等长）
+     * @param vectorB 向量B（非空且与A等长）
+     * @return 点积；两个向量都已归一化时即为余弦相似度
+     * @throws IllegalArgumentException 参数不合法时抛出
+     */
+    public static float dot(float[] vectorA, float[] vectorB) {
+        validateVectors(vectorA, vectorB);
+        return KERNEL.dot(vectorA, 0, vectorB, 0, vectorA.length);
+    }
+
+    /**
+     * 计算 a[aOffset, aOffset + length) 与 b[bOffset, bOffset + length) 的点积。
+     * 供检索内层循环直接在矩阵上调用，不做参数校验
+     */
+    public static float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        return KERNEL.dot(a, aOffset, b, bOffset, length);
+    }
+
+    /**
+     * 计算 a[aOffset, aOffset + length) 与 b[bOffset, bOffset + length) 的欧氏距离平方，不做参数校验
+     */
+    public static float squaredDistance(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        return KERNEL.squaredDistance(a, aOffset, b, bOffset, length);
+    }
+
+    /**
+     * 计算向量的 L2 范数
+     */
+    public static float norm(float[] vector) {
+        return (float) Math.sqrt(KERNEL.dot(vector, 0, vector, 0, vector.length));
+    }
+
+    /**
+     * 预先计算矩阵每一行的 L2 范数，供 {@link #cosineSimilarities} 使用
+     * @param matrix 按行连续存放的矩阵，第 i 行位于 [i * dimensions, (i + 1) * dimensions)
+     * @param rows 行数
+     * @param dimensions 维度
+     * @return 每行的范数
+     */
+    public static float[] norms(float[] matrix, int rows, int dimensions) {
+        validateMatrix(matrix, rows, dimensions);
+        float[] norms = new float[rows];
+        for (int row = 0; row < rows; row++) {
+            int offset = row * dimensions;
+            norms[row] = (float) Math.sqrt(KERNEL.dot(matrix, offset, matrix, offset, dimensions));
+        }
+        return norms;
+    }
+
+    /**
+     * 查询向量与矩阵每一行的点积，矩阵各行已归一化时即为余弦相似度，是最快的打分方式
+     * @param query 查询向量，长度即维度
+     * @param matrix 按行连续存放的矩阵
+     * @param rows 行数
+     * @param out 输出，第 i 个元素为第 i 行的得分
+     */
+    public static void dotProducts(float[] query, float[] matrix, int rows, float[] out) {
+        int dimensions = validateBatch(query, matrix, rows, out);
+        for (int row = 0; row < rows; row++) {
+            out[row] = KERNEL.dot(query, 0, matrix, row * dimensions, dimensions);
+        }
+    }
+
+    /**
+     * 查询向量与矩阵每一行的余弦相似度，行范数预先计算，每行只需一次点积
+     * @param query 查询向量
+     * @param matrix 按行连续存放的矩阵
+     * @param norms 每行的范数，见 {@link #norms}
+     * @param rows 行数
+     * @param out 输出，范围[-1, 1]；范数为 0 的行输出 0
+     * @throws IllegalArgumentException 参数不合法或查询向量为零向量时抛出
+     */
+    public static void cosineSimilarities(float[] query, float[] matrix, float[] norms, int rows, float[] out) {
+        int dimensions = validateBatch(query, matrix, rows, out);
+        if (norms == null || norms.length < rows) {
+            throw new IllegalArgumentException("Norms must cover all rows");
+        }
+        float queryNorm = norm(query);
+        if (queryNorm < EPSILON) {
+            throw new IllegalArgumentException("Vectors cannot be zero vectors");
+        }
+        for (int row = 0; row < rows; row++) {
+            if (norms[row] < EPSILON) {
+                out[row] = 0f;
+                continue;
+            }
+            float similarity = KERNEL.dot(query, 0, matrix, row * dimensions, dimensions) / (queryNorm * norms[row]);
+            out[row] = Math.max(Math.min(similarity, 1f), -1f);
+        }
+    }
+
+    /**
+     * 查询向量与矩阵每一行的欧氏距离
+     * @param query 查询向量
+     * @param matrix 按行连续存放的矩阵
+     * @param rows 行数
+     * @param out 输出，第 i 个元素为与第 i 行的距离
+     */
+    public static void euclideanDistances(float[] query, float[] matrix, int rows, float[] out) {
+        int dimensions = validateBatch(query, matrix, rows, out);
+        for (int row = 0; row < rows; row++) {
+            out[row] = (float) Math.sqrt(KERNEL.squaredDistance(query, 0, matrix, row * dimensions, dimensions));
+        }
+    }
+
+    /**
+     * 是否使用 SIMD 实现
+     */
+    public static boolean isVectorized() {
+        return !(KERNEL instanceof ScalarDistanceKernel);
+    }
+
+    // 模块未加载时不触碰 SimdDistanceKernel，避免类加载失败
+    private static DistanceKernel createKernel() {
+        if (ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent()) {
+            try {
+                DistanceKernel kernel = new SimdDistanceKernel();
+                log.info("Vector distance kernels use {}", VECTOR_MODULE);
+                return kernel;
+            } catch (LinkageError e) {
+                log.warn("Failed to load {}, falling back to scalar distance kernels.", VECTOR_MODULE, e);
+            }
+        }
+        return new ScalarDistanceKernel();
+    }
+
+    private static int validateBatch(float[] query, float[] matrix, int rows, float[] out) {
+        if (query == null || query.length == 0) {
+            throw new IllegalArgumentException("Query cannot be null or empty");
+        }
+        validateMatrix(matrix, rows, query.length);
+        if (out == null || out.length < rows) {
+            throw new IllegalArgumentException("Output must cover all rows");
+        }
+        return query.length;
+    }
+
+    private static void validateMatrix(float[] matrix, int rows, int dimensions) {
+        if (matrix == null) {
+            throw new IllegalArgumentException("Matrix cannot be null");
+        }
+        if (rows < 0 || dimensions <= 0 || (long) rows * dimensions > matrix.length) {
+            throw new IllegalArgumentException("Matrix is smaller than rows * dimensions");
+        }
+    }
+
     // 参数校验统一方法
     private static void validateVectors(float[] a, float[] b) {
         if (a == null || b == null) {
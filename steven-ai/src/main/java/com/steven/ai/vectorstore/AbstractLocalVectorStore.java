@@ -0,0 +1,581 @@
+package com.steven.ai.vectorstore;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.steven.ai.embedding.CachingEmbeddingModel;
+import com.steven.ai.utils.VectorDistanceUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.document.DocumentMetadata;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.util.JacksonUtils;
+import org.springframework.ai.vectorstore.AbstractVectorStoreBuilder;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.SimpleVectorStoreContent;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.filter.converter.SimpleVectorStoreFilterExpressionConverter;
+import org.springframework.ai.vectorstore.observation.AbstractObservationVectorStore;
+import org.springframework.core.io.Resource;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * 进程内向量库的公共部分：向量归一化、过滤表达式求值以及本地文件持久化。
+ * 具体的索引结构（平铺扫描、HNSW 图）由子类实现。
+ * <p>
+ * 配置了关键词索引时，检索为 BM25 与向量检索的混合检索，两路结果按 RRF 融合。
+ */
+@Slf4j
+public abstract class AbstractLocalVectorStore extends AbstractObservationVectorStore {
+
+    /**
+     * 分区字段：每个 PDF 文件一个分区，检索时 file_name == 'xxx' 的条件直接定位到分区
+     */
+    public static final String PARTITION_KEY = "file_name";
+
+    // RRF 融合的平滑常数，取常用值 60
+    private static final int RRF_K = 60;
+
+    protected final int dimensions;
+
+    // 检索结果缓存，未配置时为 null
+    private final RetrievalCache retrievalCache;
+
+    // 关键词倒排索引，未开启混合检索时为 null
+    private final LexicalIndex lexicalIndex;
+
+    // 串行化写入与删除，使写前日志中的顺序与生效顺序一致
+    private final Object mutationMonitor = new Object();
+
+    // 后台压实与清理都会触发压实，同一时间只允许一个在写快照
+    private final Object checkpointMonitor = new Object();
+
+    // 写前日志，未开启或重放完成前为 null
+    private volatile WriteAheadLog writeAheadLog;
+
+    private final ObjectMapper objectMapper;
+
+    private final SpelExpressionParser expressionParser = new SpelExpressionParser();
+
+    private final SimpleVectorStoreFilterExpressionConverter filterExpressionConverter = new SimpleVectorStoreFilterExpressionConverter();
+
+    protected AbstractLocalVectorStore(AbstractVectorStoreBuilder<?> builder, int dimensions,
+                                       RetrievalCache retrievalCache, LexicalIndex lexicalIndex) {
+        super(builder);
+        Assert.isTrue(dimensions > 0, "dimensions must be greater than 0");
+        this.dimensions = dimensions;
+        this.retrievalCache = retrievalCache;
+        this.lexicalIndex = lexicalIndex;
+        this.objectMapper = JsonMapper.builder().addModules(JacksonUtils.instantiateAvailableModules()).build();
+    }
+
+    /**
+     * 当前有效文档数量
+     */
+    public abstract int size();
+
+    /**
+     * 以二进制段格式保存到文件
+     * @param path 目标文件
+     */
+    public abstract void save(Path path);
+
+    /**
+     * 映射二进制段文件并替换库中全部数据
+     * @param path 段文件
+     */
+    public abstract void load(Path path);
+
+    /**
+     * 用给定内容替换库中全部数据
+     */
+    protected abstract void restore(Collection<SimpleVectorStoreContent> contents);
+
+    /**
+     * 写入已完成向量化的文档，embeddings 与 documents 一一对应
+     */
+    protected abstract void write(List<Document> documents, List<float[]> embeddings);
+
+    /**
+     * 按 id 删除文档，不存在的 id 跳过
+     */
+    protected abstract void erase(List<String> ids);
+
+    /**
+     * 删除满足过滤表达式的文档
+     * @return 被删除的文档id
+     */
+    protected abstract List<String> erase(Filter.Expression filterExpression);
+
+    /**
+     * 用已归一化的问题向量检索
+     */
+    protected abstract List<Document> search(SearchRequest request, float[] query);
+
+    /**
+     * 按 id 取回文档（不带得分），不存在的 id 跳过，用于补全只由关键词检索命中的文档
+     */
+    protected abstract List<Document> documents(List<String> ids);
+
+    @Override
+    public List<Document> doSimilaritySearch(SearchRequest request) {
+        Filter.Expression filterExpression = request.hasFilterExpression() ? request.getFilterExpression() : null;
+        String partition = partitionOf(filterExpression);
+        // 同一文件上的重复提问直接返回缓存结果；只命中问题向量时省掉 embedding 请求
+        RetrievalCache.Lookup lookup = retrievalCache == null ? null : retrievalCache.lookup(partition, request);
+        if (lookup != null && lookup.documents() != null) {
+            return lookup.documents();
+        }
+        float[] query = lookup == null ? null : lookup.embedding();
+        List<Document> documents;
+        LexicalIndex.Result lexical = lexicalIndex == null ? null
+                : lexicalIndex.search(request.getQuery(), partition, request.getTopK() * lexicalIndex.candidateFactor());
+        List<Document> keywordHits = lexical == null ? null : keywordHits(request, filterExpression, partition, lexical);
+        if (keywordHits != null) {
+            documents = keywordHits;
+        } else {
+            if (query == null) {
+                query = embedQuery(request.getQuery());
+            }
+            documents = lexical == null
+                    ? search(request, query)
+                    : fuse(request, filterExpression, partition, search(SearchRequest.from(request)
+                    .topK(request.getTopK() * lexicalIndex.candidateFactor())
+                    .build(), query), lexical);
+        }
+        if (retrievalCache != null) {
+            retrievalCache.put(lookup, query, documents);
+        }
+        return documents;
+    }
+
+    /**
+     * 关键词查询：问题切分后词数不多，且关键词检索的前 topK 个结果都包含全部查询词，直接返回，不调用 embedding
+     * @return 不满足条件时返回 null
+     */
+    private List<Document> keywordHits(SearchRequest request, Filter.Expression filterExpression, String partition,
+                                       LexicalIndex.Result lexical) {
+        List<LexicalIndex.Hit> hits = lexical.hits();
+        if (lexical.terms() == 0 || lexical.terms() > lexicalIndex.keywordMaxTerms() || hits.isEmpty()) {
+            return null;
+        }
+        List<LexicalIndex.Hit> top = hits.subList(0, Math.min(request.getTopK(), hits.size()));
+        if (top.stream().anyMatch(hit -> hit.matched() < lexical.terms())) {
+            return null;
+        }
+        Map<String, Double> scores = new LinkedHashMap<>();
+        top.forEach(hit -> scores.put(hit.id(), rrf(scores.size())));
+        List<Document> result = resolve(scores, Map.of(), filterExpression, partition);
+        return result.isEmpty() ? null : result;
+    }
+
+    /**
+     * 倒数排名融合（RRF）：每路结果按名次贡献 1 / (RRF_K + 名次)，两路都靠前的文档排在最前；
+     * 向量一侧已按相似度阈值过滤，关键词一侧不受阈值限制，用于补回向量检索漏掉的精确词匹配
+     */
+    private List<Document> fuse(SearchRequest request, Filter.Expression filterExpression, String partition,
+                                List<Document> vectorHits, LexicalIndex.Result lexical) {
+        Map<String, Double> scores = new HashMap<>();
+        Map<String, Document> found = new HashMap<>();
+        for (int rank = 0; rank < vectorHits.size(); rank++) {
+            Document document = vectorHits.get(rank);
+            scores.merge(document.getId(), rrf(rank), Double::sum);
+            found.put(document.getId(), document);
+        }
+        List<LexicalIndex.Hit> hits = lexical.hits();
+        for (int rank = 0; rank < hits.size(); rank++) {
+            scores.merge(hits.get(rank).id(), rrf(rank), Double::sum);
+        }
+        Map<String, Double> top = new LinkedHashMap<>();
+        scores.entrySet().stream()
+                .sorted(Map.Entry.<String, Double>comparingByValue().reversed())
+                .limit(request.getTopK())
+                .forEach(entry -> top.put(entry.getKey(), entry.getValue()));
+        return resolve(top, found, filterExpression, partition);
+    }
+
+    // 按融合后的顺序组装结果，得分替换为融合得分；只由关键词命中的文档从库中取回，并补做过滤表达式求值
+    private List<Document> resolve(Map<String, Double> scores, Map<String, Document> found,
+                                   Filter.Expression filterExpression, String partition) {
+        List<String> missing = scores.keySet().stream().filter(id -> !found.containsKey(id)).toList();
+        Map<String, Document> documents = new HashMap<>(found);
+        if (!missing.isEmpty()) {
+            Predicate<Map<String, Object>> predicate = filterExpression == null || (partition != null && isPartitionOnly(filterExpression))
+                    ? null : filterPredicate(filterExpression);
+            for (Document document : documents(missing)) {
+                if (predicate == null || predicate.test(document.getMetadata())) {
+                    documents.put(document.getId(), document);
+                }
+            }
+        }
+        List<Document> result = new ArrayList<>(scores.size());
+        scores.forEach((id, score) -> {
+            Document document = documents.get(id);
+            if (document != null) {
+                result.add(Document.builder()
+                        .id(id)
+                        .text(document.getText())
+                        .metadata(document.getMetadata())
+                        .score(score)
+                        .build());
+            }
+        });
+        return result;
+    }
+
+    private static double rrf(int rank) {
+        return 1.0 / (RRF_K + rank + 1);
+    }
+
+    @Override
+    public void doAdd(List<Document> documents) {
+        Objects.requireNonNull(documents, "Documents list cannot be null");
+        if (documents.isEmpty()) {
+            throw new IllegalArgumentException("Documents list cannot be empty");
+        }
+        // 先在锁外完成向量化，避免远程调用期间阻塞检索
+        apply(documents, embed(documents));
+    }
+
+    /**
+     * 写入调用方已向量化的文档，供批量导入流水线使用，跳过库内的向量化步骤
+     * @param documents 文档
+     * @param embeddings 与文档一一对应的向量
+     */
+    public void add(List<Document> documents, List<float[]> embeddings) {
+        Objects.requireNonNull(documents, "Documents list cannot be null");
+        Assert.isTrue(documents.size() == embeddings.size(), "Documents and embeddings must have the same size");
+        if (documents.isEmpty()) {
+            return;
+        }
+        apply(documents, embeddings);
+    }
+
+    @Override
+    public void doDelete(List<String> idList) {
+        long position = -1;
+        synchronized (mutationMonitor) {
+            erase(idList);
+            removed(idList, null);
+            if (writeAheadLog != null) {
+                position = writeAheadLog.appendDelete(idList);
+            }
+        }
+        sync(position);
+    }
+
+    @Override
+    protected void doDelete(Filter.Expression filterExpression) {
+        long position = -1;
+        synchronized (mutationMonitor) {
+            List<String> matched = erase(filterExpression);
+            removed(matched, partitionOf(filterExpression));
+            if (writeAheadLog != null && !matched.isEmpty()) {
+                position = writeAheadLog.appendDelete(matched);
+            }
+        }
+        sync(position);
+    }
+
+    /**
+     * 重放快照之后的日志，之后的写入与删除都先记入该日志再返回；应在加载快照之后、对外提供服务之前调用
+     * @param log 写前日志
+     * @return 重放的记录数
+     */
+    public int replay(WriteAheadLog log) {
+        int records = log.replay(new WriteAheadLog.Replayer() {
+            @Override
+            public void add(List<Document> documents, List<float[]> embeddings) {
+                apply(documents, embeddings);
+            }
+
+            @Override
+            public void delete(List<String> ids) {
+                doDelete(ids);
+            }
+        });
+        synchronized (mutationMonitor) {
+            this.writeAheadLog = log;
+        }
+        return records;
+    }
+
+    /**
+     * 把日志压实进快照：切换到新一代日志，保存快照，再删除旧日志。
+     * 保存期间的写入会同时出现在快照和新日志中，重放是按 id 的覆盖写，结果不变
+     * @param snapshot 快照（段文件）路径
+     */
+    public void checkpoint(Path snapshot) {
+        WriteAheadLog log = writeAheadLog;
+        Assert.state(log != null, "Write-ahead log is not attached");
+        synchronized (checkpointMonitor) {
+            long generation;
+            synchronized (mutationMonitor) {
+                generation = log.rotate();
+            }
+            save(snapshot);
+            log.deleteBefore(generation);
+        }
+    }
+
+    /**
+     * 是否挂着写前日志：挂着时写入方法返回即已落盘，否则写入只在内存中，直到下一次保存快照
+     */
+    public boolean isWriteAheadLogAttached() {
+        return writeAheadLog != null;
+    }
+
+    /**
+     * 停止记录日志，关闭前调用；之后的写入只保存在内存中
+     */
+    public void detachWriteAheadLog() {
+        synchronized (mutationMonitor) {
+            this.writeAheadLog = null;
+        }
+    }
+
+    // 写入与记日志在同一把锁内完成，保证日志中的顺序与实际生效的顺序一致；等待落盘在锁外进行，便于合并刷盘
+    private void apply(List<Document> documents, List<float[]> embeddings) {
+        long position = -1;
+        synchronized (mutationMonitor) {
+            write(documents, embeddings);
+            indexed(documents);
+            if (writeAheadLog != null) {
+                position = writeAheadLog.appendAdd(documents, embeddings);
+            }
+        }
+        sync(position);
+    }
+
+    private void sync(long position) {
+        WriteAheadLog log = writeAheadLog;
+        if (position >= 0 && log != null) {
+            log.sync(position);
+        }
+    }
+
+    public EmbeddingModel getEmbeddingModel() {
+        return embeddingModel;
+    }
+
+    /**
+     * 从 SimpleVectorStore 的 JSON 文件中加载，仅用于把旧的 chat-pdf.json 迁移到段文件
+     * @param resource JSON 资源
+     */
+    public void load(Resource resource) {
+        Map<String, SimpleVectorStoreContent> store;
+        try {
+            store = objectMapper.readValue(resource.getInputStream(), new TypeReference<LinkedHashMap<String, SimpleVectorStoreContent>>() {
+            });
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+        restore(store.values());
+        if (lexicalIndex != null) {
+            lexicalIndex.clear();
+            store.values().forEach(content -> lexicalIndex.add(content.getId(), content.getText(), partitionValue(content.getMetadata())));
+        }
+        invalidateAll();
+    }
+
+    /**
+     * 文档被删除后同步关键词索引并使检索缓存失效
+     * @param ids 被删除的文档id
+     * @param partition 删除条件限定的分区，无法确定时为 null，此时全部检索缓存失效
+     */
+    private void removed(Collection<String> ids, String partition) {
+        if (lexicalIndex != null) {
+            lexicalIndex.remove(ids);
+        }
+        if (retrievalCache != null) {
+            if (partition != null) {
+                retrievalCache.invalidate(partition);
+            } else {
+                retrievalCache.invalidateAll();
+            }
+        }
+    }
+
+    /**
+     * 加载段文件替换全部数据后调用，按段内文本重建关键词索引并使全部检索缓存失效
+     */
+    protected void reloaded(MappedSegment segment) {
+        if (lexicalIndex != null) {
+            lexicalIndex.clear();
+            for (int row = 0; row < segment.size(); row++) {
+                Map<String, Object> metadata = segment.metadata(row);
+                lexicalIndex.add(segment.id(row), segment.text(row), partitionValue(metadata));
+            }
+        }
+        invalidateAll();
+    }
+
+    private void invalidateAll() {
+        if (retrievalCache != null) {
+            retrievalCache.invalidateAll();
+        }
+    }
+
+    // 新写入的文档进入关键词索引，并使其所在分区的检索缓存失效
+    private void indexed(List<Document> documents) {
+        Set<String> partitions = new HashSet<>();
+        for (Document document : documents) {
+            String partition = partitionValue(document.getMetadata());
+            if (lexicalIndex != null) {
+                lexicalIndex.add(document.getId(), document.getText(), partition);
+            }
+            partitions.add(partition);
+        }
+        if (retrievalCache != null) {
+            partitions.forEach(retrievalCache::invalidate);
+        }
+    }
+
+    private static String partitionValue(Map<String, Object> metadata) {
+        Object value = metadata == null ? null : metadata.get(PARTITION_KEY);
+        return value == null ? null : value.toString();
+    }
+
+    protected void writeSegment(Path path, MappedSegment.Records records) {
+        try {
+            MappedSegment.write(path, dimensions, records);
+        } catch (IOException ex) {
+            log.error("IOException occurred while saving vector store file.", ex);
+            throw new RuntimeException(ex);
+        }
+    }
+
+    protected MappedSegment openSegment(Path path) {
+        try {
+            MappedSegment segment = MappedSegment.open(path);
+            if (segment.dimensions() != dimensions) {
+                throw new IllegalStateException("Segment dimension " + segment.dimensions() + " does not match store dimension " + dimensions);
+            }
+            return segment;
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * 逐条调用 embedding 模型，调用方不应持有锁
+     */
+    protected List<float[]> embed(List<Document> documents) {
+        List<float[]> embeddings = new ArrayList<>(documents.size());
+        for (Document document : documents) {
+            log.debug("Calling EmbeddingModel for document id = {}", document.getId());
+            embeddings.add(embeddingModel.embed(document));
+        }
+        return embeddings;
+    }
+
+    // 问题向量不写入持久的 embedding 缓存，只由检索缓存复用
+    protected float[] embedQuery(String query) {
+        return normalize(embeddingModel instanceof CachingEmbeddingModel caching
+                ? caching.embedQuery(query)
+                : embeddingModel.embed(query));
+    }
+
+    protected Predicate<Map<String, Object>> filterPredicate(Filter.Expression filterExpression) {
+        // 表达式只解析一次，扫描时复用
+        Expression expression = expressionParser.parseExpression(filterExpressionConverter.convertExpression(filterExpression));
+        return metadata -> {
+            StandardEvaluationContext context = new StandardEvaluationContext();
+            context.setVariable("metadata", metadata);
+            return Boolean.TRUE.equals(expression.getValue(context, Boolean.class));
+        };
+    }
+
+    /**
+     * 从过滤表达式中取出分区条件 file_name == 'xxx' 的取值，顶层为 AND 时在两侧查找
+     * @return 分区取值，表达式不限定分区时返回 null
+     */
+    protected static String partitionOf(Filter.Expression expression) {
+        if (expression == null) {
+            return null;
+        }
+        if (expression.type() == Filter.ExpressionType.EQ
+                && expression.left() instanceof Filter.Key key
+                && expression.right() instanceof Filter.Value value
+                && PARTITION_KEY.equals(unquote(key.key()))
+                && value.value() != null) {
+            return value.value().toString();
+        }
+        if (expression.type() == Filter.ExpressionType.AND) {
+            String partition = expression.left() instanceof Filter.Expression left ? partitionOf(left) : null;
+            if (partition == null && expression.right() instanceof Filter.Expression right) {
+                partition = partitionOf(right);
+            }
+            return partition;
+        }
+        return null;
+    }
+
+    /**
+     * 表达式是否仅由分区条件构成，此时分区内的行无需再求值过滤表达式
+     */
+    protected static boolean isPartitionOnly(Filter.Expression expression) {
+        return expression.type() == Filter.ExpressionType.EQ && partitionOf(expression) != null;
+    }
+
+    private static String unquote(String key) {
+        if (key.length() >= 2 && (key.startsWith("'") && key.endsWith("'") || key.startsWith("\"") && key.endsWith("\""))) {
+            return key.substring(1, key.length() - 1);
+        }
+        return key;
+    }
+
+    protected float[] checkedNormalize(float[] embedding) {
+        if (embedding.length != dimensions) {
+            throw new IllegalArgumentException("Embedding dimension " + embedding.length + " does not match store dimension " + dimensions);
+        }
+        return normalize(embedding);
+    }
+
+    protected static float[] normalize(float[] vector) {
+        double norm = 0.0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        if (norm == 0.0) {
+            throw new IllegalArgumentException("Vectors cannot have zero norm");
+        }
+        float inv = (float) (1.0 / Math.sqrt(norm));
+        float[] result = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            result[i] = vector[i] * inv;
+        }
+        return result;
+    }
+
+    protected static float dot(float[] query, float[] vectors, int offset, int dimensions) {
+        return VectorDistanceUtils.dot(query, 0, vectors, offset, dimensions);
+    }
+
+    protected static Document toDocument(String id, String text, Map<String, Object> metadata) {
+        return Document.builder()
+                .id(id)
+                .text(text)
+                .metadata(new HashMap<>(metadata))
+                .build();
+    }
+
+    protected static Document toDocument(String id, String text, Map<String, Object> metadata, float score) {
+        Map<String, Object> result = new HashMap<>(metadata);
+        result.put(DocumentMetadata.DISTANCE.value(), 1.0 - score);
+        return Document.builder()
+                .id(id)
+                .text(text)
+                .metadata(result)
+                .score((double) score)
+                .build();
+    }
+}
@@ -0,0 +1,540 @@
+package com.steven.ai.vectorstore;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.AbstractVectorStoreBuilder;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.SimpleVectorStoreContent;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.observation.VectorStoreObservationContext;
+import org.springframework.util.Assert;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+/**
+ * 平铺向量库：所有向量按行连续存放在一个 float[] 中。
+ * <p>
+ * 写入时向量先做 L2 归一化，检索时余弦相似度退化为一次点积；
+ * 全量扫描配合定长小顶堆选出 topK，避免 SimpleVectorStore 逐条装箱、排序带来的开销与 GC 压力。
+ * <p>
+ * 从段文件加载的数据作为只读基础段直接在映射内存上扫描，之后新增的文档追加在堆内数组中；
+ * 基础段中被删除或覆盖的行用墓碑标记，下次保存时一并压实。
+ * <p>
+ * 两部分各自维护 file_name 的倒排索引，按文件过滤的检索只扫描该文件的行。
+ * <p>
+ * 开启 int8 量化时，内存中只保留每行的 int8 编码（约为 float 的 1/4），全量扫描用量化点积选出 topK * rescoreFactor 个候选，
+ * 再读取磁盘上的全精度向量（基础段的映射文件、堆内行的临时文件）精确重排，相似度阈值只作用于精确得分。
+ */
+public class FlatVectorStore extends AbstractLocalVectorStore implements Closeable {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final boolean quantized;
+
+    private final int rescoreFactor;
+
+    // 量化模式下堆内行的全精度向量
+    private final RawVectorFile raw;
+
+    // 量化模式下基础段的 int8 编码，加载段文件时生成
+    private QuantizedVectors baseCodes;
+
+    // 量化模式下堆内行的 int8 编码，与 vectors 二选一
+    private QuantizedVectors codes;
+
+    // 只读基础段，行号 [0, base.size())，未加载段文件时为 null
+    private MappedSegment base;
+
+    private final BitSet baseDeleted = new BitSet();
+
+    // 基础段文档id -> 行号
+    private final Map<String, Integer> baseRows = new HashMap<>();
+
+    // 基础段存活行按文件分区
+    private final PartitionIndex basePartitions = new PartitionIndex(PARTITION_KEY);
+
+    // 按行存放的归一化向量，第 i 行占用 [i * dimensions, (i + 1) * dimensions)；量化模式下为 null
+    private float[] vectors;
+
+    private String[] ids;
+
+    private String[] texts;
+
+    private Map<String, Object>[] metadatas;
+
+    private int size;
+
+    // 堆内文档id -> 行号
+    private final Map<String, Integer> slots = new HashMap<>();
+
+    // 堆内行按文件分区
+    private final PartitionIndex partitions = new PartitionIndex(PARTITION_KEY);
+
+    protected FlatVectorStore(FlatVectorStoreBuilder builder) {
+        super(builder, builder.dimensions, builder.retrievalCache, builder.lexicalIndex);
+        this.quantized = builder.rawVectorFile != null;
+        this.rescoreFactor = builder.rescoreFactor;
+        this.raw = quantized ? new RawVectorFile(builder.rawVectorFile, dimensions) : null;
+        allocate(INITIAL_CAPACITY);
+    }
+
+    public static FlatVectorStoreBuilder builder(EmbeddingModel embeddingModel) {
+        return new FlatVectorStoreBuilder(embeddingModel);
+    }
+
+    @Override
+    protected void write(List<Document> documents, List<float[]> embeddings) {
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < documents.size(); i++) {
+                Document document = documents.get(i);
+                put(document.getId(), document.getText(), document.getMetadata(), embeddings.get(i));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    protected void erase(List<String> idList) {
+        lock.writeLock().lock();
+        try {
+            for (String id : idList) {
+                remove(id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    protected List<String> erase(Filter.Expression filterExpression) {
+        Predicate<Map<String, Object>> predicate = filterPredicate(filterExpression);
+        String partition = partitionOf(filterExpression);
+        List<String> matched = new ArrayList<>();
+        lock.writeLock().lock();
+        try {
+            if (base != null) {
+                BitSet baseScope = partition != null ? basePartitions.rows(partition) : null;
+                for (int row = next(baseScope, 0, base.size()); row >= 0; row = next(baseScope, row + 1, base.size())) {
+                    if (!baseDeleted.get(row) && predicate.test(base.metadata(row))) {
+                        matched.add(base.id(row));
+                    }
+                }
+            }
+            BitSet scope = partition != null ? partitions.rows(partition) : null;
+            for (int row = next(scope, 0, size); row >= 0; row = next(scope, row + 1, size)) {
+                if (predicate.test(metadatas[row])) {
+                    matched.add(ids[row]);
+                }
+            }
+            matched.forEach(this::remove);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return matched;
+    }
+
+    @Override
+    protected List<Document> search(SearchRequest request, float[] query) {
+        Filter.Expression filterExpression = request.hasFilterExpression() ? request.getFilterExpression() : null;
+        // 带分区条件时只遍历该文件的行，纯分区条件无需再求值过滤表达式
+        String partition = partitionOf(filterExpression);
+        Predicate<Map<String, Object>> predicate = filterExpression == null || (partition != null && isPartitionOnly(filterExpression))
+                ? null : filterPredicate(filterExpression);
+        float threshold = (float) request.getSimilarityThreshold();
+
+        lock.readLock().lock();
+        try {
+            // 基础段的行以负数 -(row + 1) 记入堆，与堆内行号区分；量化得分是近似值，阈值留到重排后再判断
+            TopKHeap heap = new TopKHeap(quantized ? request.getTopK() * rescoreFactor : request.getTopK());
+            float minScore = quantized ? Float.NEGATIVE_INFINITY : threshold;
+            QuantizedVectors.Query queryCodes = quantized ? QuantizedVectors.encode(query) : null;
+            float[] vector = new float[dimensions];
+            if (base != null) {
+                BitSet baseScope = partition != null ? basePartitions.rows(partition) : null;
+                for (int row = next(baseScope, 0, base.size()); row >= 0; row = next(baseScope, row + 1, base.size())) {
+                    if (baseDeleted.get(row) || (predicate != null && !predicate.test(base.metadata(row)))) {
+                        continue;
+                    }
+                    float score;
+                    if (quantized) {
+                        score = baseCodes.dot(queryCodes, row);
+                    } else {
+                        base.copyVector(row, vector);
+                        score = dot(query, vector, 0, dimensions);
+                    }
+                    if (score >= minScore && score > heap.minScore()) {
+                        heap.offer(-(row + 1), score);
+                    }
+                }
+            }
+            BitSet scope = partition != null ? partitions.rows(partition) : null;
+            for (int row = next(scope, 0, size); row >= 0; row = next(scope, row + 1, size)) {
+                if (predicate != null && !predicate.test(metadatas[row])) {
+                    continue;
+                }
+                float score = quantized ? codes.dot(queryCodes, row) : dot(query, vectors, row * dimensions, dimensions);
+                if (score >= minScore && score > heap.minScore()) {
+                    heap.offer(row, score);
+                }
+            }
+            if (quantized) {
+                heap = rescore(query, heap, request.getTopK(), threshold, vector);
+            }
+            float[] scores = new float[heap.size()];
+            int[] rows = heap.drainSlotsDescending(scores);
+            List<Document> result = new ArrayList<>(rows.length);
+            for (int i = 0; i < rows.length; i++) {
+                int row = rows[i];
+                if (row < 0) {
+                    int baseRow = -row - 1;
+                    result.add(toDocument(base.id(baseRow), base.text(baseRow), base.metadata(baseRow), scores[i]));
+                } else {
+                    result.add(toDocument(ids[row], texts[row], metadatas[row], scores[i]));
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return baseRows.size() + size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void save(Path path) {
+        lock.readLock().lock();
+        try {
+            // 存活的基础段行在前，堆内行在后
+            int[] liveBaseRows = baseRows.values().stream().mapToInt(Integer::intValue).sorted().toArray();
+            MappedSegment segment = base;
+            writeSegment(path, new MappedSegment.Records() {
+                @Override
+                public int size() {
+                    return liveBaseRows.length + size;
+                }
+
+                @Override
+                public String id(int row) {
+                    return row < liveBaseRows.length ? segment.id(liveBaseRows[row]) : ids[row - liveBaseRows.length];
+                }
+
+                @Override
+                public String text(int row) {
+                    return row < liveBaseRows.length ? segment.text(liveBaseRows[row]) : texts[row - liveBaseRows.length];
+                }
+
+                @Override
+                public Map<String, Object> metadata(int row) {
+                    return row < liveBaseRows.length ? segment.metadata(liveBaseRows[row]) : metadatas[row - liveBaseRows.length];
+                }
+
+                @Override
+                public void copyVector(int row, float[] target) {
+                    if (row < liveBaseRows.length) {
+                        segment.copyVector(liveBaseRows[row], target);
+                    } else {
+                        copyHeapVector(row - liveBaseRows.length, target);
+                    }
+                }
+            });
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    protected List<Document> documents(List<String> idList) {
+        lock.readLock().lock();
+        try {
+            List<Document> result = new ArrayList<>(idList.size());
+            for (String id : idList) {
+                Integer baseRow = baseRows.get(id);
+                if (baseRow != null) {
+                    result.add(toDocument(id, base.text(baseRow), base.metadata(baseRow)));
+                    continue;
+                }
+                Integer row = slots.get(id);
+                if (row != null) {
+                    result.add(toDocument(id, texts[row], metadatas[row]));
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void load(Path path) {
+        MappedSegment segment = openSegment(path);
+        lock.writeLock().lock();
+        try {
+            clear();
+            base = segment;
+            for (int row = 0; row < segment.size(); row++) {
+                baseRows.put(segment.id(row), row);
+                basePartitions.add(segment.metadata(row), row);
+            }
+            if (quantized) {
+                // 顺序读一遍映射文件生成编码，之后扫描不再触碰全精度向量所在的页
+                baseCodes = new QuantizedVectors(dimensions, segment.size());
+                float[] vector = new float[dimensions];
+                for (int row = 0; row < segment.size(); row++) {
+                    segment.copyVector(row, vector);
+                    baseCodes.set(row, vector);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        reloaded(segment);
+    }
+
+    @Override
+    protected void restore(Collection<SimpleVectorStoreContent> contents) {
+        lock.writeLock().lock();
+        try {
+            clear();
+            allocate(Math.max(INITIAL_CAPACITY, contents.size()));
+            contents.forEach(c -> put(c.getId(), c.getText(), c.getMetadata(), c.getEmbedding()));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public VectorStoreObservationContext.Builder createObservationContextBuilder(String operationName) {
+        return VectorStoreObservationContext.builder("flat", operationName)
+                .dimensions(dimensions)
+                .collectionName("in-memory-flat")
+                .similarityMetric("cosine");
+    }
+
+    // 写入或覆盖一行，调用方需持有写锁
+    private void put(String id, String text, Map<String, Object> metadata, float[] embedding) {
+        float[] normalized = checkedNormalize(embedding);
+        // 覆盖基础段中的同名文档
+        Integer baseRow = baseRows.remove(id);
+        if (baseRow != null) {
+            tombstone(baseRow);
+        }
+        Integer row = slots.get(id);
+        if (row == null) {
+            if (size == ids.length) {
+                grow();
+            }
+            row = size++;
+            slots.put(id, row);
+        } else {
+            partitions.remove(metadatas[row], row);
+        }
+        if (quantized) {
+            codes.set(row, normalized);
+            raw.write(row, normalized);
+        } else {
+            System.arraycopy(normalized, 0, vectors, row * dimensions, dimensions);
+        }
+        ids[row] = id;
+        texts[row] = text;
+        metadatas[row] = Collections.unmodifiableMap(new HashMap<>(metadata));
+        partitions.add(metadatas[row], row);
+    }
+
+    // 删除一行：堆内用最后一行填补空位保持紧凑，基础段只打墓碑，调用方需持有写锁
+    private void remove(String id) {
+        Integer baseRow = baseRows.remove(id);
+        if (baseRow != null) {
+            tombstone(baseRow);
+            return;
+        }
+        Integer row = slots.remove(id);
+        if (row == null) {
+            return;
+        }
+        partitions.remove(metadatas[row], row);
+        int last = --size;
+        if (row != last) {
+            partitions.remove(metadatas[last], last);
+            if (quantized) {
+                codes.move(last, row);
+                raw.move(last, row);
+            } else {
+                System.arraycopy(vectors, last * dimensions, vectors, row * dimensions, dimensions);
+            }
+            ids[row] = ids[last];
+            texts[row] = texts[last];
+            metadatas[row] = metadatas[last];
+            slots.put(ids[row], row);
+            partitions.add(metadatas[row], row);
+        }
+        ids[last] = null;
+        texts[last] = null;
+        metadatas[last] = null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (raw != null) {
+            raw.close();
+        }
+    }
+
+    // 用全精度向量对量化候选重新打分，调用方需持有读锁
+    private TopKHeap rescore(float[] query, TopKHeap candidates, int topK, float threshold, float[] vector) {
+        int[] rows = candidates.drainSlotsDescending(null);
+        TopKHeap heap = new TopKHeap(topK);
+        for (int row : rows) {
+            if (row < 0) {
+                base.copyVector(-row - 1, vector);
+            } else {
+                raw.read(row, vector);
+            }
+            float score = dot(query, vector, 0, dimensions);
+            if (score >= threshold && score > heap.minScore()) {
+                heap.offer(row, score);
+            }
+        }
+        return heap;
+    }
+
+    private void copyHeapVector(int row, float[] target) {
+        if (quantized) {
+            raw.read(row, target);
+        } else {
+            System.arraycopy(vectors, row * dimensions, target, 0, dimensions);
+        }
+    }
+
+    private void tombstone(int baseRow) {
+        baseDeleted.set(baseRow);
+        basePartitions.remove(base.metadata(baseRow), baseRow);
+    }
+
+    // 遍历行号：rows 为 null 时顺序遍历 [from, limit)，否则只遍历 rows 中的行
+    private static int next(BitSet rows, int from, int limit) {
+        if (rows == null) {
+            return from < limit ? from : -1;
+        }
+        int row = rows.nextSetBit(from);
+        return row < limit ? row : -1;
+    }
+
+    private void clear() {
+        base = null;
+        baseCodes = null;
+        baseDeleted.clear();
+        baseRows.clear();
+        basePartitions.clear();
+        slots.clear();
+        partitions.clear();
+        size = 0;
+        allocate(INITIAL_CAPACITY);
+        if (quantized) {
+            raw.truncate(0);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void allocate(int capacity) {
+        if (quantized) {
+            this.codes = new QuantizedVectors(dimensions, capacity);
+        } else {
+            this.vectors = new float[capacity * dimensions];
+        }
+        this.ids = new String[capacity];
+        this.texts = new String[capacity];
+        this.metadatas = new Map[capacity];
+    }
+
+    private void grow() {
+        int capacity = ids.length + (ids.length >> 1) + 1;
+        if (quantized) {
+            codes.ensureCapacity(capacity);
+        } else {
+            this.vectors = Arrays.copyOf(vectors, capacity * dimensions);
+        }
+        this.ids = Arrays.copyOf(ids, capacity);
+        this.texts = Arrays.copyOf(texts, capacity);
+        this.metadatas = Arrays.copyOf(metadatas, capacity);
+    }
+
+    public static final class FlatVectorStoreBuilder extends AbstractVectorStoreBuilder<FlatVectorStoreBuilder> {
+
+        private int dimensions = 1024;
+
+        private Path rawVectorFile;
+
+        private int rescoreFactor = 4;
+
+        private RetrievalCache retrievalCache;
+
+        private LexicalIndex lexicalIndex;
+
+        private FlatVectorStoreBuilder(EmbeddingModel embeddingModel) {
+            super(embeddingModel);
+        }
+
+        /**
+         * 向量维度，需与 embedding 模型输出一致
+         */
+        public FlatVectorStoreBuilder dimensions(int dimensions) {
+            this.dimensions = dimensions;
+            return this;
+        }
+
+        /**
+         * 开启 int8 量化，堆内行的全精度向量写入 rawVectorFile
+         */
+        public FlatVectorStoreBuilder quantized(Path rawVectorFile) {
+            this.rawVectorFile = rawVectorFile;
+            return this;
+        }
+
+        /**
+         * 量化模式下参与精确重排的候选数为 topK 的倍数
+         */
+        public FlatVectorStoreBuilder rescoreFactor(int rescoreFactor) {
+            Assert.isTrue(rescoreFactor >= 1, "rescoreFactor must be at least 1");
+            this.rescoreFactor = rescoreFactor;
+            return this;
+        }
+
+        /**
+         * 检索结果缓存，为 null 时不缓存
+         */
+        public FlatVectorStoreBuilder retrievalCache(RetrievalCache retrievalCache) {
+            this.retrievalCache = retrievalCache;
+            return this;
+        }
+
+        /**
+         * 关键词倒排索引，设置后检索为关键词与向量的混合检索，为 null 时只做向量检索
+         */
+        public FlatVectorStoreBuilder lexicalIndex(LexicalIndex lexicalIndex) {
+            this.lexicalIndex = lexicalIndex;
+            return this;
+        }
+
+        @Override
+        public FlatVectorStore build() {
+            return new FlatVectorStore(this);
+        }
+    }
+}
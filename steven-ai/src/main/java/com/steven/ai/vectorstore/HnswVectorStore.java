@@ -0,0 +1,745 @@
+package com.steven.ai.vectorstore;
+
+import com.steven.ai.utils.VectorDistanceUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.AbstractVectorStoreBuilder;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.SimpleVectorStoreContent;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.observation.VectorStoreObservationContext;
+import org.springframework.util.Assert;
+
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+
+/**
+ * 基于 HNSW（分层可导航小世界图）的近似最近邻向量库。
+ * <p>
+ * 向量与平铺库一样连续存放并预先归一化；每个节点在自己所在的各层维护邻居表，
+ * 检索从最高层入口点贪心下降，在第 0 层以 efSearch 宽度做束搜索，复杂度约为 O(log N)。
+ * 文档可随 PDF 上传增量插入；删除采用墓碑标记，墓碑比例过高时整体重建图。
+ * <p>
+ * 存活节点按 file_name 建倒排索引。按文件检索时，分区不大则直接精确扫描分区内节点；
+ * 分区较大时仍走图检索，但用位图判断节点是否属于分区，不再逐个求值过滤表达式。
+ */
+@Slf4j
+public class HnswVectorStore extends AbstractLocalVectorStore {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private static final int[] NO_LINKS = new int[0];
+
+    // 墓碑超过该比例时重建图
+    private static final double REBUILD_DELETED_RATIO = 0.5;
+
+    private final int m;
+
+    private final int maxConnections0;
+
+    private final int efConstruction;
+
+    private final int efSearch;
+
+    private final double levelMultiplier;
+
+    // 分区节点数不超过该值时精确扫描分区，否则走图检索
+    private final int partitionScanLimit;
+
+    private final Random random = new Random(42);
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // 按节点号存放的归一化向量
+    private float[] vectors;
+
+    private String[] ids;
+
+    private String[] texts;
+
+    private Map<String, Object>[] metadatas;
+
+    // links[node][layer] 为该节点在某一层的邻居
+    private int[][][] links;
+
+    private final BitSet deleted = new BitSet();
+
+    // 节点总数（含墓碑）
+    private int nodeCount;
+
+    private int deletedCount;
+
+    private int entryPoint = -1;
+
+    private int maxLevel = -1;
+
+    // 文档id -> 节点号
+    private final Map<String, Integer> nodes = new HashMap<>();
+
+    // 存活节点按文件分区
+    private final PartitionIndex partitions = new PartitionIndex(PARTITION_KEY);
+
+    protected HnswVectorStore(HnswVectorStoreBuilder builder) {
+        super(builder, builder.dimensions, builder.retrievalCache, builder.lexicalIndex);
+        Assert.isTrue(builder.m >= 2, "m must be at least 2");
+        Assert.isTrue(builder.efConstruction >= builder.m, "efConstruction must not be less than m");
+        Assert.isTrue(builder.efSearch > 0, "efSearch must be greater than 0");
+        this.m = builder.m;
+        this.maxConnections0 = builder.m * 2;
+        this.efConstruction = builder.efConstruction;
+        this.efSearch = builder.efSearch;
+        this.levelMultiplier = 1.0 / Math.log(builder.m);
+        this.partitionScanLimit = builder.efSearch * 32;
+        allocate(INITIAL_CAPACITY);
+    }
+
+    public static HnswVectorStoreBuilder builder(EmbeddingModel embeddingModel) {
+        return new HnswVectorStoreBuilder(embeddingModel);
+    }
+
+    @Override
+    protected void write(List<Document> documents, List<float[]> embeddings) {
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < documents.size(); i++) {
+                Document document = documents.get(i);
+                insert(document.getId(), document.getText(), document.getMetadata(), checkedNormalize(embeddings.get(i)));
+            }
+            // 覆盖已有 id 时旧节点只打墓碑，与删除一样需要检查碎片
+            rebuildIfFragmented();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    protected void erase(List<String> idList) {
+        lock.writeLock().lock();
+        try {
+            idList.forEach(this::markDeleted);
+            rebuildIfFragmented();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    protected List<String> erase(Filter.Expression filterExpression) {
+        Predicate<Map<String, Object>> predicate = filterPredicate(filterExpression);
+        String partition = partitionOf(filterExpression);
+        List<String> matched = new ArrayList<>();
+        lock.writeLock().lock();
+        try {
+            if (partition != null) {
+                BitSet scope = partitions.rows(partition);
+                for (int node = scope.nextSetBit(0); node >= 0; node = scope.nextSetBit(node + 1)) {
+                    if (predicate.test(metadatas[node])) {
+                        matched.add(ids[node]);
+                    }
+                }
+            } else {
+                for (int node = 0; node < nodeCount; node++) {
+                    if (!deleted.get(node) && predicate.test(metadatas[node])) {
+                        matched.add(ids[node]);
+                    }
+                }
+            }
+            matched.forEach(this::markDeleted);
+            rebuildIfFragmented();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return matched;
+    }
+
+    @Override
+    protected List<Document> search(SearchRequest request, float[] query) {
+        Filter.Expression filterExpression = request.hasFilterExpression() ? request.getFilterExpression() : null;
+        String partition = partitionOf(filterExpression);
+        Predicate<Map<String, Object>> predicate = filterExpression == null || (partition != null && isPartitionOnly(filterExpression))
+                ? null : filterPredicate(filterExpression);
+        float threshold = (float) request.getSimilarityThreshold();
+
+        lock.readLock().lock();
+        try {
+            TopKHeap heap = partition == null
+                    ? search(query, request.getTopK(), predicate, null)
+                    : searchPartition(query, request.getTopK(), predicate, partitions.rows(partition));
+            float[] scores = new float[heap.size()];
+            int[] found = heap.drainSlotsDescending(scores);
+            List<Document> result = new ArrayList<>(found.length);
+            for (int i = 0; i < found.length; i++) {
+                if (scores[i] < threshold) {
+                    break;
+                }
+                int node = found[i];
+                result.add(toDocument(ids[node], texts[node], metadatas[node], scores[i]));
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 以库中已有向量作为查询，对比 HNSW 与暴力扫描的 topK 结果，返回平均召回率
+     * @param samples 抽样查询数
+     * @param k 每次比较的结果数
+     * @return 召回率，库为空时返回 1
+     */
+    public double recall(int samples, int k) {
+        lock.readLock().lock();
+        try {
+            int live = nodeCount - deletedCount;
+            if (live == 0) {
+                return 1.0;
+            }
+            Random sampler = new Random(7);
+            double total = 0;
+            int measured = 0;
+            for (int attempt = 0; measured < samples && attempt < samples * 10; attempt++) {
+                int queryNode = sampler.nextInt(nodeCount);
+                if (deleted.get(queryNode)) {
+                    continue;
+                }
+                float[] query = Arrays.copyOfRange(vectors, queryNode * dimensions, (queryNode + 1) * dimensions);
+                int[] approximate = search(query, k, null, null).drainSlotsDescending(null);
+                TopKHeap exact = new TopKHeap(k);
+                for (int node = 0; node < nodeCount; node++) {
+                    if (!deleted.get(node)) {
+                        exact.offer(node, dot(query, vectors, node * dimensions, dimensions));
+                    }
+                }
+                int[] truth = exact.drainSlotsDescending(null);
+                Set<Integer> expected = new HashSet<>();
+                for (int node : truth) {
+                    expected.add(node);
+                }
+                int hit = 0;
+                for (int node : approximate) {
+                    if (expected.contains(node)) {
+                        hit++;
+                    }
+                }
+                total += truth.length == 0 ? 1.0 : (double) hit / truth.length;
+                measured++;
+            }
+            return measured == 0 ? 1.0 : total / measured;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return nodeCount - deletedCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void save(Path path) {
+        lock.readLock().lock();
+        try {
+            int[] live = new int[nodeCount - deletedCount];
+            for (int node = 0, i = 0; node < nodeCount; node++) {
+                if (!deleted.get(node)) {
+                    live[i++] = node;
+                }
+            }
+            writeSegment(path, new MappedSegment.Records() {
+                @Override
+                public int size() {
+                    return live.length;
+                }
+
+                @Override
+                public String id(int row) {
+                    return ids[live[row]];
+                }
+
+                @Override
+                public String text(int row) {
+                    return texts[live[row]];
+                }
+
+                @Override
+                public Map<String, Object> metadata(int row) {
+                    return metadatas[live[row]];
+                }
+
+                @Override
+                public void copyVector(int row, float[] target) {
+                    System.arraycopy(vectors, live[row] * dimensions, target, 0, dimensions);
+                }
+            });
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    protected List<Document> documents(List<String> idList) {
+        lock.readLock().lock();
+        try {
+            List<Document> result = new ArrayList<>(idList.size());
+            for (String id : idList) {
+                Integer node = nodes.get(id);
+                if (node != null) {
+                    result.add(toDocument(id, texts[node], metadatas[node]));
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 图结构不落盘，加载时从段文件逐行读出向量重新建图；建图需要随机访问向量，因此向量会拷贝到堆内
+     */
+    @Override
+    public void load(Path path) {
+        MappedSegment segment = openSegment(path);
+        lock.writeLock().lock();
+        try {
+            clear(Math.max(INITIAL_CAPACITY, segment.size()));
+            for (int row = 0; row < segment.size(); row++) {
+                float[] vector = new float[dimensions];
+                segment.copyVector(row, vector);
+                insert(segment.id(row), segment.text(row), segment.metadata(row), vector);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        reloaded(segment);
+    }
+
+    @Override
+    protected void restore(Collection<SimpleVectorStoreContent> contents) {
+        lock.writeLock().lock();
+        try {
+            clear(Math.max(INITIAL_CAPACITY, contents.size()));
+            contents.forEach(c -> insert(c.getId(), c.getText(), c.getMetadata(), checkedNormalize(c.getEmbedding())));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public VectorStoreObservationContext.Builder createObservationContextBuilder(String operationName) {
+        return VectorStoreObservationContext.builder("hnsw", operationName)
+                .dimensions(dimensions)
+                .collectionName("in-memory-hnsw")
+                .similarityMetric("cosine");
+    }
+
+    // 分区内检索：分区较小时精确扫描，否则限定在分区内做图检索，调用方需持有读锁
+    private TopKHeap searchPartition(float[] query, int topK, Predicate<Map<String, Object>> predicate, BitSet scope) {
+        if (scope.cardinality() > partitionScanLimit) {
+            return search(query, topK, predicate, scope);
+        }
+        TopKHeap heap = new TopKHeap(topK);
+        for (int node = scope.nextSetBit(0); node >= 0; node = scope.nextSetBit(node + 1)) {
+            if (predicate != null && !predicate.test(metadatas[node])) {
+                continue;
+            }
+            float score = dot(query, vectors, node * dimensions, dimensions);
+            if (score > heap.minScore()) {
+                heap.offer(node, score);
+            }
+        }
+        return heap;
+    }
+
+    // 检索：高层贪心下降，第 0 层束搜索，scope 不为空时只接受分区内的节点，调用方需持有读锁
+    private TopKHeap search(float[] query, int topK, Predicate<Map<String, Object>> predicate, BitSet scope) {
+        if (entryPoint < 0) {
+            return new TopKHeap(topK);
+        }
+        int ep = entryPoint;
+        for (int layer = maxLevel; layer > 0; layer--) {
+            ep = greedyClosest(query, ep, layer);
+        }
+        // 分区位图只含存活节点
+        IntPredicate live = scope == null ? node -> !deleted.get(node) : scope::get;
+        IntPredicate accept = predicate == null
+                ? live
+                : node -> live.test(node) && predicate.test(metadatas[node]);
+        TopKHeap candidates = searchLayer(query, ep, Math.max(efSearch, topK), 0, accept);
+        // 束宽度大于 topK，只保留得分最高的 topK 个
+        float[] scores = new float[candidates.size()];
+        int[] found = candidates.drainSlotsDescending(scores);
+        TopKHeap result = new TopKHeap(topK);
+        for (int i = 0; i < found.length && i < topK; i++) {
+            result.offer(found[i], scores[i]);
+        }
+        return result;
+    }
+
+    // 插入一个节点，调用方需持有写锁
+    private void insert(String id, String text, Map<String, Object> metadata, float[] vector) {
+        markDeleted(id);
+        if (nodeCount == ids.length) {
+            grow();
+        }
+        int node = nodeCount++;
+        System.arraycopy(vector, 0, vectors, node * dimensions, dimensions);
+        ids[node] = id;
+        texts[node] = text;
+        metadatas[node] = Collections.unmodifiableMap(new HashMap<>(metadata));
+        nodes.put(id, node);
+        partitions.add(metadatas[node], node);
+
+        int level = randomLevel();
+        links[node] = new int[level + 1][];
+        Arrays.fill(links[node], NO_LINKS);
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return;
+        }
+
+        int ep = entryPoint;
+        for (int layer = maxLevel; layer > level; layer--) {
+            ep = greedyClosest(vector, ep, layer);
+        }
+        for (int layer = Math.min(level, maxLevel); layer >= 0; layer--) {
+            TopKHeap heap = searchLayer(vector, ep, efConstruction, layer, other -> other != node && !deleted.get(other));
+            float[] scores = new float[heap.size()];
+            int[] candidates = heap.drainSlotsDescending(scores);
+            if (candidates.length == 0) {
+                continue;
+            }
+            int[] neighbors = selectNeighbors(vector, candidates, m);
+            links[node][layer] = neighbors;
+            for (int neighbor : neighbors) {
+                connect(neighbor, node, layer);
+            }
+            ep = candidates[0];
+        }
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = node;
+        }
+    }
+
+    // 在单层上逐步移动到更近的邻居，直到无法改进
+    private int greedyClosest(float[] query, int ep, int layer) {
+        int current = ep;
+        float best = dot(query, vectors, current * dimensions, dimensions);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int neighbor : linksOf(current, layer)) {
+                float score = dot(query, vectors, neighbor * dimensions, dimensions);
+                if (score > best) {
+                    best = score;
+                    current = neighbor;
+                    changed = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    // 单层束搜索：所有节点都可用于导航，只有 accept 通过的节点进入结果
+    private TopKHeap searchLayer(float[] query, int ep, int ef, int layer, IntPredicate accept) {
+        BitSet visited = new BitSet(nodeCount);
+        CandidateQueue candidates = new CandidateQueue();
+        TopKHeap results = new TopKHeap(ef);
+
+        float epScore = dot(query, vectors, ep * dimensions, dimensions);
+        visited.set(ep);
+        candidates.push(ep, epScore);
+        if (accept.test(ep)) {
+            results.offer(ep, epScore);
+        }
+        while (!candidates.isEmpty()) {
+            float score = candidates.peekScore();
+            if (results.size() == ef && score < results.minScore()) {
+                break;
+            }
+            int current = candidates.pop();
+            for (int neighbor : linksOf(current, layer)) {
+                if (visited.get(neighbor)) {
+                    continue;
+                }
+                visited.set(neighbor);
+                float neighborScore = dot(query, vectors, neighbor * dimensions, dimensions);
+                if (results.size() < ef || neighborScore > results.minScore()) {
+                    candidates.push(neighbor, neighborScore);
+                    if (accept.test(neighbor)) {
+                        results.offer(neighbor, neighborScore);
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    // 反向连接，邻居数超出上限时以 from 为中心重新选邻裁剪
+    private void connect(int from, int to, int layer) {
+        int[] current = links[from][layer];
+        int[] extended = Arrays.copyOf(current, current.length + 1);
+        extended[current.length] = to;
+        int max = layer == 0 ? maxConnections0 : m;
+        if (extended.length <= max) {
+            links[from][layer] = extended;
+            return;
+        }
+        float[] base = vectorOf(from);
+        TopKHeap heap = new TopKHeap(extended.length);
+        for (int neighbor : extended) {
+            heap.offer(neighbor, dot(base, vectors, neighbor * dimensions, dimensions));
+        }
+        links[from][layer] = selectNeighbors(base, heap.drainSlotsDescending(null), max);
+    }
+
+    /**
+     * 启发式选邻：候选按与 base 的相似度从高到低遍历，只有当它离 base 比离任一已选邻居更近时才入选，
+     * 以保留不同方向上的连接；不足 max 个时用被淘汰的最佳候选补齐
+     */
+    private int[] selectNeighbors(float[] base, int[] sorted, int max) {
+        int[] selected = new int[Math.min(max, sorted.length)];
+        int count = 0;
+        List<Integer> pruned = new ArrayList<>();
+        for (int candidate : sorted) {
+            if (count == selected.length) {
+                break;
+            }
+            int offset = candidate * dimensions;
+            float toBase = dot(base, vectors, offset, dimensions);
+            boolean keep = true;
+            for (int i = 0; i < count && keep; i++) {
+                keep = dotNodes(selected[i], candidate) <= toBase;
+            }
+            if (keep) {
+                selected[count++] = candidate;
+            } else {
+                pruned.add(candidate);
+            }
+        }
+        for (int i = 0; count < selected.length && i < pruned.size(); i++) {
+            selected[count++] = pruned.get(i);
+        }
+        return selected;
+    }
+
+    private float dotNodes(int a, int b) {
+        return VectorDistanceUtils.dot(vectors, a * dimensions, vectors, b * dimensions, dimensions);
+    }
+
+    private int[] linksOf(int node, int layer) {
+        int[][] layers = links[node];
+        return layer < layers.length ? layers[layer] : NO_LINKS;
+    }
+
+    private float[] vectorOf(int node) {
+        return Arrays.copyOfRange(vectors, node * dimensions, (node + 1) * dimensions);
+    }
+
+    private int randomLevel() {
+        return (int) Math.floor(-Math.log(1.0 - random.nextDouble()) * levelMultiplier);
+    }
+
+    private void markDeleted(String id) {
+        Integer node = nodes.remove(id);
+        if (node != null && !deleted.get(node)) {
+            deleted.set(node);
+            deletedCount++;
+            partitions.remove(metadatas[node], node);
+        }
+    }
+
+    // 墓碑过多会拖慢导航并浪费内存，超过阈值时用存活节点重建整张图
+    private void rebuildIfFragmented() {
+        if (deletedCount == 0 || deletedCount < nodeCount * REBUILD_DELETED_RATIO) {
+            return;
+        }
+        log.info("Rebuilding HNSW graph, nodes = {}, deleted = {}", nodeCount, deletedCount);
+        float[] oldVectors = vectors;
+        String[] oldIds = ids;
+        String[] oldTexts = texts;
+        Map<String, Object>[] oldMetadatas = metadatas;
+        BitSet oldDeleted = (BitSet) deleted.clone();
+        int oldCount = nodeCount;
+        clear(Math.max(INITIAL_CAPACITY, oldCount - deletedCount));
+        for (int node = 0; node < oldCount; node++) {
+            if (!oldDeleted.get(node)) {
+                insert(oldIds[node], oldTexts[node], oldMetadatas[node],
+                        Arrays.copyOfRange(oldVectors, node * dimensions, (node + 1) * dimensions));
+            }
+        }
+    }
+
+    private void clear(int capacity) {
+        nodes.clear();
+        partitions.clear();
+        deleted.clear();
+        nodeCount = 0;
+        deletedCount = 0;
+        entryPoint = -1;
+        maxLevel = -1;
+        allocate(capacity);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void allocate(int capacity) {
+        this.vectors = new float[capacity * dimensions];
+        this.ids = new String[capacity];
+        this.texts = new String[capacity];
+        this.metadatas = new Map[capacity];
+        this.links = new int[capacity][][];
+    }
+
+    private void grow() {
+        int capacity = ids.length + (ids.length >> 1) + 1;
+        this.vectors = Arrays.copyOf(vectors, capacity * dimensions);
+        this.ids = Arrays.copyOf(ids, capacity);
+        this.texts = Arrays.copyOf(texts, capacity);
+        this.metadatas = Arrays.copyOf(metadatas, capacity);
+        this.links = Arrays.copyOf(links, capacity);
+    }
+
+    /**
+     * 可增长的大顶堆，按得分从高到低弹出待扩展的节点
+     */
+    private static class CandidateQueue {
+
+        private float[] scores = new float[64];
+        private int[] nodes = new int[64];
+        private int size;
+
+        void push(int node, float score) {
+            if (size == scores.length) {
+                scores = Arrays.copyOf(scores, size * 2);
+                nodes = Arrays.copyOf(nodes, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (scores[parent] >= score) {
+                    break;
+                }
+                scores[i] = scores[parent];
+                nodes[i] = nodes[parent];
+                i = parent;
+            }
+            scores[i] = score;
+            nodes[i] = node;
+        }
+
+        float peekScore() {
+            return scores[0];
+        }
+
+        int pop() {
+            int top = nodes[0];
+            size--;
+            float score = scores[size];
+            int node = nodes[size];
+            int i = 0;
+            while (true) {
+                int left = 2 * i + 1;
+                if (left >= size) {
+                    break;
+                }
+                int right = left + 1;
+                int largest = right < size && scores[right] > scores[left] ? right : left;
+                if (scores[largest] <= score) {
+                    break;
+                }
+                scores[i] = scores[largest];
+                nodes[i] = nodes[largest];
+                i = largest;
+            }
+            scores[i] = score;
+            nodes[i] = node;
+            return top;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+    }
+
+    public static final class HnswVectorStoreBuilder extends AbstractVectorStoreBuilder<HnswVectorStoreBuilder> {
+
+        private int dimensions = 1024;
+
+        private int m = 16;
+
+        private int efConstruction = 200;
+
+        private int efSearch = 64;
+
+        private RetrievalCache retrievalCache;
+
+        private LexicalIndex lexicalIndex;
+
+        private HnswVectorStoreBuilder(EmbeddingModel embeddingModel) {
+            super(embeddingModel);
+        }
+
+        /**
+         * 向量维度，需与 embedding 模型输出一致
+         */
+        public HnswVectorStoreBuilder dimensions(int dimensions) {
+            this.dimensions = dimensions;
+            return this;
+        }
+
+        /**
+         * 每个节点在非 0 层的最大邻居数，第 0 层为其两倍
+         */
+        public HnswVectorStoreBuilder m(int m) {
+            this.m = m;
+            return this;
+        }
+
+        /**
+         * 建图时的候选束宽度，越大图质量越高、插入越慢
+         */
+        public HnswVectorStoreBuilder efConstruction(int efConstruction) {
+            this.efConstruction = efConstruction;
+            return this;
+        }
+
+        /**
+         * 检索时的候选束宽度，越大召回越高、检索越慢
+         */
+        public HnswVectorStoreBuilder efSearch(int efSearch) {
+            this.efSearch = efSearch;
+            return this;
+        }
+
+        /**
+         * 检索结果缓存，为 null 时不缓存
+         */
+        public HnswVectorStoreBuilder retrievalCache(RetrievalCache retrievalCache) {
+            this.retrievalCache = retrievalCache;
+            return this;
+        }
+
+        /**
+         * 关键词倒排索引，设置后检索为关键词与向量的混合检索，为 null 时只做向量检索
+         */
+        public HnswVectorStoreBuilder lexicalIndex(LexicalIndex lexicalIndex) {
+            this.lexicalIndex = lexicalIndex;
+            return this;
+        }
+
+        @Override
+        public HnswVectorStore build() {
+            return new HnswVectorStore(this);
+        }
+    }
+}
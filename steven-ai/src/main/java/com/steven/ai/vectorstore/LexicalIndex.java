@@ -0,0 +1,462 @@
+package com.steven.ai.vectorstore;
+
+import org.springframework.util.Assert;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * BM25 倒排索引，与向量库中的文档一一对应，用于混合检索的关键词一侧。
+ * <p>
+ * 中文按字符二元组（bigram）切分，单个汉字成词时保留单字；字母、数字连续成一个词并转小写，
+ * 课程编号、站名、价格这类向量检索容易漏掉的精确词可以直接命中。
+ * 删除只打标记，标记超过一半时重建倒排表。线程安全。
+ * <p>
+ * 倒排表与每个分区的文档列表都按内部编号升序排列：限定分区的检索把每个词的倒排表与分区文档求交，
+ * 得分只记在命中的文档上，单文件问答的开销与该文件的大小相关，与全库大小无关。
+ */
+public class LexicalIndex {
+
+    private static final float K1 = 1.2f;
+
+    private static final float B = 0.75f;
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final int candidateFactor;
+
+    private final int keywordMaxTerms;
+
+    // 文档id -> 内部编号
+    private final Map<String, Integer> docs = new HashMap<>();
+
+    private String[] ids = new String[INITIAL_CAPACITY];
+
+    private String[] partitions = new String[INITIAL_CAPACITY];
+
+    private int[] lengths = new int[INITIAL_CAPACITY];
+
+    // 每个文档包含的词（去重），删除时据此更新 df
+    private int[][] docTerms = new int[INITIAL_CAPACITY][];
+
+    private final BitSet deleted = new BitSet();
+
+    // 内部编号总数（含已删除）
+    private int docCount;
+
+    private int deletedCount;
+
+    private long totalLength;
+
+    private final Map<String, Integer> termIds = new HashMap<>();
+
+    private final List<Postings> postings = new ArrayList<>();
+
+    // 分区 -> 分区内的文档编号（升序，含已删除），压实时重建
+    private final Map<String, DocList> partitionDocs = new HashMap<>();
+
+    /**
+     * @param candidateFactor 混合检索时两路各取 topK * candidateFactor 个候选参与融合
+     * @param keywordMaxTerms 问题切分后的词数不超过该值且 topK 结果全部包含所有词时，视为关键词查询，不再调用 embedding
+     */
+    public LexicalIndex(int candidateFactor, int keywordMaxTerms) {
+        Assert.isTrue(candidateFactor >= 1, "candidateFactor must be at least 1");
+        Assert.isTrue(keywordMaxTerms >= 0, "keywordMaxTerms must not be negative");
+        this.candidateFactor = candidateFactor;
+        this.keywordMaxTerms = keywordMaxTerms;
+    }
+
+    int candidateFactor() {
+        return candidateFactor;
+    }
+
+    int keywordMaxTerms() {
+        return keywordMaxTerms;
+    }
+
+    /**
+     * 当前有效文档数量
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return docCount - deletedCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 写入文档，同id的旧文档会被替换
+     * @param partition 文档所属分区（file_name），可为 null
+     */
+    void add(String id, String text, String partition) {
+        Map<String, Integer> frequencies = new HashMap<>();
+        List<String> tokens = tokenize(text);
+        tokens.forEach(token -> frequencies.merge(token, 1, Integer::sum));
+        lock.writeLock().lock();
+        try {
+            remove(id);
+            if (docCount == ids.length) {
+                grow();
+            }
+            int doc = docCount++;
+            int[] terms = new int[frequencies.size()];
+            int i = 0;
+            for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+                terms[i] = termIds.computeIfAbsent(entry.getKey(), k -> {
+                    postings.add(new Postings());
+                    return postings.size() - 1;
+                });
+                postings.get(terms[i]).add(doc, entry.getValue());
+                i++;
+            }
+            ids[doc] = id;
+            partitions[doc] = partition;
+            if (partition != null) {
+                partitionDocs.computeIfAbsent(partition, p -> new DocList()).add(doc);
+            }
+            lengths[doc] = tokens.size();
+            docTerms[doc] = terms;
+            totalLength += tokens.size();
+            docs.put(id, doc);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void remove(Collection<String> removed) {
+        lock.writeLock().lock();
+        try {
+            removed.forEach(this::remove);
+            compactIfFragmented();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void clear() {
+        lock.writeLock().lock();
+        try {
+            docs.clear();
+            deleted.clear();
+            docCount = 0;
+            deletedCount = 0;
+            totalLength = 0;
+            termIds.clear();
+            postings.clear();
+            partitionDocs.clear();
+            Arrays.fill(ids, null);
+            Arrays.fill(partitions, null);
+            Arrays.fill(docTerms, null);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * BM25 检索，只返回至少包含三分之一查询词的文档；中文问句切分后有不少“请问”“是哪”之类的噪声二元组，要求过高会漏掉相关文档
+     * @param query 问题
+     * @param partition 限定的分区，为 null 时不限定
+     * @param limit 最多返回的文档数
+     */
+    Result search(String query, String partition, int limit) {
+        Set<String> terms = new LinkedHashSet<>(tokenize(query));
+        if (terms.isEmpty()) {
+            return new Result(0, List.of());
+        }
+        lock.readLock().lock();
+        try {
+            int live = docCount - deletedCount;
+            if (live == 0) {
+                return new Result(terms.size(), List.of());
+            }
+            DocList scope = null;
+            if (partition != null) {
+                scope = partitionDocs.get(partition);
+                if (scope == null) {
+                    return new Result(terms.size(), List.of());
+                }
+            }
+            float averageLength = Math.max(1f, (float) totalLength / live);
+            // 只为命中的文档记分
+            Map<Integer, Match> matches = new HashMap<>();
+            for (String term : terms) {
+                Integer termId = termIds.get(term);
+                if (termId == null) {
+                    continue;
+                }
+                Postings list = postings.get(termId);
+                float idf = (float) Math.log(1 + (live - list.live + 0.5) / (list.live + 0.5));
+                if (scope == null) {
+                    for (int i = 0; i < list.size; i++) {
+                        score(matches, list.docs[i], list.frequencies[i], idf, averageLength);
+                    }
+                } else {
+                    intersect(list, scope, partition, matches, idf, averageLength);
+                }
+            }
+            int minMatched = (terms.size() + 2) / 3;
+            TopKHeap heap = new TopKHeap(limit);
+            for (Map.Entry<Integer, Match> entry : matches.entrySet()) {
+                Match match = entry.getValue();
+                if (match.matched >= minMatched && match.score > heap.minScore()) {
+                    heap.offer(entry.getKey(), match.score);
+                }
+            }
+            float[] topScores = new float[heap.size()];
+            int[] top = heap.drainSlotsDescending(topScores);
+            List<Hit> hits = new ArrayList<>(top.length);
+            for (int i = 0; i < top.length; i++) {
+                hits.add(new Hit(ids[top[i]], topScores[i], matches.get(top[i]).matched));
+            }
+            return new Result(terms.size(), hits);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 倒排表与分区文档求交：先按分区的编号范围截取倒排表，再遍历两者中较短的一侧，在另一侧二分查找
+     */
+    private void intersect(Postings list, DocList scope, String partition, Map<Integer, Match> matches, float idf, float averageLength) {
+        int from = lowerBound(list.docs, 0, list.size, scope.docs[0]);
+        int to = lowerBound(list.docs, from, list.size, scope.docs[scope.size - 1] + 1);
+        if (to - from <= scope.size) {
+            for (int i = from; i < to; i++) {
+                if (partition.equals(partitions[list.docs[i]])) {
+                    score(matches, list.docs[i], list.frequencies[i], idf, averageLength);
+                }
+            }
+            return;
+        }
+        for (int j = 0; j < scope.size && from < to; j++) {
+            int i = lowerBound(list.docs, from, to, scope.docs[j]);
+            if (i < to && list.docs[i] == scope.docs[j]) {
+                score(matches, list.docs[i], list.frequencies[i], idf, averageLength);
+                i++;
+            }
+            from = i;
+        }
+    }
+
+    private void score(Map<Integer, Match> matches, int doc, int tf, float idf, float averageLength) {
+        if (deleted.get(doc)) {
+            return;
+        }
+        Match match = matches.computeIfAbsent(doc, d -> new Match());
+        match.score += idf * tf * (K1 + 1) / (tf + K1 * (1 - B + B * lengths[doc] / averageLength));
+        match.matched++;
+    }
+
+    // 升序数组 [from, to) 中第一个不小于 value 的位置
+    private static int lowerBound(int[] values, int from, int to, int value) {
+        int low = from;
+        int high = to;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * 切分文本：NFKC 归一化后，连续的汉字（以及假名、谚文）按二元组切分，连续的字母数字为一个词，其余字符作为分隔
+     */
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return tokens;
+        }
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+        StringBuilder word = new StringBuilder();
+        List<Integer> run = new ArrayList<>();
+        for (int i = 0; i < normalized.length(); ) {
+            int codePoint = normalized.codePointAt(i);
+            i += Character.charCount(codePoint);
+            if (isCjk(codePoint)) {
+                flushWord(word, tokens);
+                run.add(codePoint);
+            } else {
+                flushRun(run, tokens);
+                if (Character.isLetterOrDigit(codePoint)) {
+                    word.appendCodePoint(codePoint);
+                } else {
+                    flushWord(word, tokens);
+                }
+            }
+        }
+        flushWord(word, tokens);
+        flushRun(run, tokens);
+        return tokens;
+    }
+
+    private static boolean isCjk(int codePoint) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+
+    private static void flushWord(StringBuilder word, List<String> tokens) {
+        if (!word.isEmpty()) {
+            tokens.add(word.toString());
+            word.setLength(0);
+        }
+    }
+
+    private static void flushRun(List<Integer> run, List<String> tokens) {
+        if (run.size() == 1) {
+            tokens.add(Character.toString(run.get(0)));
+        }
+        for (int i = 0; i + 1 < run.size(); i++) {
+            tokens.add(new StringBuilder().appendCodePoint(run.get(i)).appendCodePoint(run.get(i + 1)).toString());
+        }
+        run.clear();
+    }
+
+    private void remove(String id) {
+        Integer doc = docs.remove(id);
+        if (doc == null) {
+            return;
+        }
+        deleted.set(doc);
+        deletedCount++;
+        totalLength -= lengths[doc];
+        for (int term : docTerms[doc]) {
+            postings.get(term).live--;
+        }
+    }
+
+    // 已删除的文档超过一半时，按存活文档重新编号并重建倒排表
+    private void compactIfFragmented() {
+        if (deletedCount == 0 || deletedCount * 2 < docCount) {
+            return;
+        }
+        int[] remap = new int[docCount];
+        int next = 0;
+        for (int doc = 0; doc < docCount; doc++) {
+            if (deleted.get(doc)) {
+                remap[doc] = -1;
+                continue;
+            }
+            remap[doc] = next;
+            ids[next] = ids[doc];
+            partitions[next] = partitions[doc];
+            lengths[next] = lengths[doc];
+            docTerms[next] = docTerms[doc];
+            docs.put(ids[next], next);
+            next++;
+        }
+        for (int doc = next; doc < docCount; doc++) {
+            ids[doc] = null;
+            partitions[doc] = null;
+            docTerms[doc] = null;
+        }
+        postings.forEach(list -> list.remap(remap));
+        partitionDocs.clear();
+        for (int doc = 0; doc < next; doc++) {
+            if (partitions[doc] != null) {
+                partitionDocs.computeIfAbsent(partitions[doc], p -> new DocList()).add(doc);
+            }
+        }
+        docCount = next;
+        deletedCount = 0;
+        deleted.clear();
+    }
+
+    private void grow() {
+        int capacity = ids.length + (ids.length >> 1) + 1;
+        ids = Arrays.copyOf(ids, capacity);
+        partitions = Arrays.copyOf(partitions, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+        docTerms = Arrays.copyOf(docTerms, capacity);
+    }
+
+    /**
+     * 一个词的倒排表：按写入顺序存放文档编号与词频
+     */
+    private static final class Postings {
+
+        private int[] docs = new int[4];
+
+        private int[] frequencies = new int[4];
+
+        private int size;
+
+        // 包含该词的存活文档数，即 BM25 中的 df
+        private int live;
+
+        private void add(int doc, int frequency) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+                frequencies = Arrays.copyOf(frequencies, size * 2);
+            }
+            docs[size] = doc;
+            frequencies[size] = frequency;
+            size++;
+            live++;
+        }
+
+        private void remap(int[] remap) {
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                int doc = remap[docs[i]];
+                if (doc >= 0) {
+                    docs[kept] = doc;
+                    frequencies[kept] = frequencies[i];
+                    kept++;
+                }
+            }
+            size = kept;
+        }
+    }
+
+    /**
+     * 一个分区内的文档编号，按写入顺序即升序
+     */
+    private static final class DocList {
+
+        private int[] docs = new int[4];
+
+        private int size;
+
+        private void add(int doc) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+            }
+            docs[size++] = doc;
+        }
+    }
+
+    /**
+     * 一个文档在本次检索中的累计得分与命中的查询词数
+     */
+    private static final class Match {
+
+        private float score;
+
+        private int matched;
+    }
+
+    /**
+     * @param terms 问题切分后的词数（去重）
+     * @param hits 按得分从高到低排列的文档
+     */
+    record Result(int terms, List<Hit> hits) {
+    }
+
+    /**
+     * @param matched 文档包含的查询词数
+     */
+    record Hit(String id, float score, int matched) {
+    }
+}
@@ -0,0 +1,276 @@
+package com.steven.ai.vectorstore;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 向量库的二进制段文件，通过 FileChannel.map 只读打开。
+ * <pre>
+ * [header 64B] magic | version | dimensions | count | vectorsOffset | recordsOffset | offsetsTableOffset
+ * [vectors]    count * dimensions 个小端 float，定长步长，第 i 行位于 vectorsOffset + i * dimensions * 4
+ * [records]    每条记录：id 长度 + id | text 长度 + text | metadata 长度 + metadata(JSON)，均为 UTF-8
+ * [offsets]    count 个 long，第 i 条记录在文件中的起始位置
+ * </pre>
+ * 打开时不做任何解析，向量块由操作系统按页懒加载；文本与元数据在被访问时才解码。
+ */
+public final class MappedSegment {
+
+    private static final int MAGIC = 0x53564543; // "SVEC"
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 64;
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static final TypeReference<HashMap<String, Object>> METADATA_TYPE = new TypeReference<>() {
+    };
+
+    private final Path path;
+
+    private final int dimensions;
+
+    private final int count;
+
+    // 单个映射最多 2GB，向量块按整行切分成多段映射
+    private final FloatBuffer[] vectorChunks;
+
+    private final int rowsPerChunk;
+
+    private final ByteBuffer records;
+
+    private final long recordsOffset;
+
+    private final long offsetsTableOffset;
+
+    private final AtomicReferenceArray<Map<String, Object>> metadataCache;
+
+    private MappedSegment(Path path, int dimensions, int count, FloatBuffer[] vectorChunks, int rowsPerChunk,
+                          ByteBuffer records, long recordsOffset, long offsetsTableOffset) {
+        this.path = path;
+        this.dimensions = dimensions;
+        this.count = count;
+        this.vectorChunks = vectorChunks;
+        this.rowsPerChunk = rowsPerChunk;
+        this.records = records;
+        this.recordsOffset = recordsOffset;
+        this.offsetsTableOffset = offsetsTableOffset;
+        this.metadataCache = new AtomicReferenceArray<>(count);
+    }
+
+    /**
+     * 段文件的数据来源，写入时按行号依次读取
+     */
+    public interface Records {
+
+        int size();
+
+        String id(int row);
+
+        String text(int row);
+
+        Map<String, Object> metadata(int row);
+
+        /**
+         * 把第 row 行的归一化向量拷贝到 target
+         */
+        void copyVector(int row, float[] target);
+    }
+
+    /**
+     * 打开段文件，只映射不解析
+     * @param path 段文件路径
+     * @return 只读段
+     */
+    public static MappedSegment open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt(0) != MAGIC) {
+                throw new IOException("Not a vector segment file: " + path);
+            }
+            if (header.getInt(4) != VERSION) {
+                throw new IOException("Unsupported vector segment version " + header.getInt(4) + ": " + path);
+            }
+            int dimensions = header.getInt(8);
+            int count = header.getInt(12);
+            long vectorsOffset = header.getLong(16);
+            long recordsOffset = header.getLong(24);
+            long offsetsTableOffset = header.getLong(32);
+
+            long stride = (long) dimensions * Float.BYTES;
+            int rowsPerChunk = (int) Math.max(1, Integer.MAX_VALUE / stride);
+            int chunks = count == 0 ? 0 : (count + rowsPerChunk - 1) / rowsPerChunk;
+            FloatBuffer[] vectorChunks = new FloatBuffer[chunks];
+            for (int i = 0; i < chunks; i++) {
+                int rows = Math.min(rowsPerChunk, count - i * rowsPerChunk);
+                vectorChunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, vectorsOffset + i * rowsPerChunk * stride, rows * stride)
+                        .order(ByteOrder.LITTLE_ENDIAN)
+                        .asFloatBuffer();
+            }
+            long recordsLength = offsetsTableOffset + (long) count * Long.BYTES - recordsOffset;
+            if (recordsLength > Integer.MAX_VALUE) {
+                throw new IOException("Record block larger than 2GB is not supported: " + path);
+            }
+            MappedByteBuffer records = channel.map(FileChannel.MapMode.READ_ONLY, recordsOffset, recordsLength);
+            records.order(ByteOrder.LITTLE_ENDIAN);
+            return new MappedSegment(path, dimensions, count, vectorChunks, rowsPerChunk, records, recordsOffset, offsetsTableOffset);
+        }
+    }
+
+    /**
+     * 写出段文件：先写临时文件，完成后原子替换目标文件
+     * @param path 目标路径
+     * @param dimensions 向量维度
+     * @param source 数据来源
+     */
+    public static void write(Path path, int dimensions, Records source) throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+        try {
+            int count = source.size();
+            long stride = (long) dimensions * Float.BYTES;
+            long vectorsOffset = HEADER_SIZE;
+            long recordsOffset = vectorsOffset + count * stride;
+            long[] offsets = new long[count];
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                // 1.向量块
+                channel.position(vectorsOffset);
+                float[] vector = new float[dimensions];
+                ByteBuffer row = ByteBuffer.allocate((int) stride).order(ByteOrder.LITTLE_ENDIAN);
+                for (int i = 0; i < count; i++) {
+                    source.copyVector(i, vector);
+                    row.clear();
+                    row.asFloatBuffer().put(vector);
+                    row.limit((int) stride);
+                    writeFully(channel, row);
+                }
+                // 2.记录块
+                long position = recordsOffset;
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                for (int i = 0; i < count; i++) {
+                    bytes.reset();
+                    writeBlock(bytes, source.id(i).getBytes(StandardCharsets.UTF_8));
+                    writeBlock(bytes, source.text(i) == null ? new byte[0] : source.text(i).getBytes(StandardCharsets.UTF_8));
+                    writeBlock(bytes, OBJECT_MAPPER.writeValueAsBytes(source.metadata(i)));
+                    offsets[i] = position;
+                    writeFully(channel, ByteBuffer.wrap(bytes.toByteArray()));
+                    position += bytes.size();
+                }
+                // 3.偏移表
+                long offsetsTableOffset = position;
+                ByteBuffer table = ByteBuffer.allocate(count * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                table.asLongBuffer().put(offsets);
+                writeFully(channel, table);
+                // 4.文件头最后写，保证头部指向的内容均已落盘
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                header.putInt(MAGIC).putInt(VERSION).putInt(dimensions).putInt(count)
+                        .putLong(vectorsOffset).putLong(recordsOffset).putLong(offsetsTableOffset);
+                header.clear();
+                channel.position(0);
+                writeFully(channel, header);
+                channel.force(true);
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    public int dimensions() {
+        return dimensions;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * 把第 row 行向量拷贝到 target，只触碰该行所在的页
+     */
+    public void copyVector(int row, float[] target) {
+        vectorChunks[row / rowsPerChunk].get((row % rowsPerChunk) * dimensions, target, 0, dimensions);
+    }
+
+    public String id(int row) {
+        int position = recordPosition(row);
+        return readString(position);
+    }
+
+    public String text(int row) {
+        int position = recordPosition(row);
+        position += Integer.BYTES + records.getInt(position);
+        return readString(position);
+    }
+
+    /**
+     * 读取元数据，首次访问时解码并缓存
+     */
+    public Map<String, Object> metadata(int row) {
+        Map<String, Object> cached = metadataCache.get(row);
+        if (cached != null) {
+            return cached;
+        }
+        int position = recordPosition(row);
+        position += Integer.BYTES + records.getInt(position);
+        position += Integer.BYTES + records.getInt(position);
+        int length = records.getInt(position);
+        byte[] bytes = new byte[length];
+        records.get(position + Integer.BYTES, bytes);
+        Map<String, Object> metadata;
+        try {
+            metadata = Collections.unmodifiableMap(OBJECT_MAPPER.readValue(bytes, METADATA_TYPE));
+        } catch (IOException e) {
+            throw new IllegalStateException("Corrupted metadata at row " + row + " in " + path, e);
+        }
+        metadataCache.compareAndSet(row, null, metadata);
+        return metadataCache.get(row);
+    }
+
+    private int recordPosition(int row) {
+        long offset = records.getLong((int) (offsetsTableOffset - recordsOffset) + row * Long.BYTES);
+        return (int) (offset - recordsOffset);
+    }
+
+    private String readString(int position) {
+        int length = records.getInt(position);
+        byte[] bytes = new byte[length];
+        records.get(position + Integer.BYTES, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeBlock(ByteArrayOutputStream out, byte[] bytes) {
+        int length = bytes.length;
+        out.write(length & 0xFF);
+        out.write((length >>> 8) & 0xFF);
+        out.write((length >>> 16) & 0xFF);
+        out.write((length >>> 24) & 0xFF);
+        out.write(bytes, 0, length);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.steven.ai.vectorstore;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 元数据倒排索引：分区字段的取值 -> 行号集合。
+ * 带分区条件的检索只遍历对应分区的行，不再对全库逐条求值过滤表达式。非线程安全，由所属向量库的锁保护。
+ */
+class PartitionIndex {
+
+    private static final BitSet EMPTY = new BitSet(0);
+
+    private final String key;
+
+    private final Map<String, BitSet> partitions = new HashMap<>();
+
+    PartitionIndex(String key) {
+        this.key = key;
+    }
+
+    void add(Map<String, Object> metadata, int row) {
+        String value = valueOf(metadata);
+        if (value != null) {
+            partitions.computeIfAbsent(value, v -> new BitSet()).set(row);
+        }
+    }
+
+    void remove(Map<String, Object> metadata, int row) {
+        String value = valueOf(metadata);
+        if (value == null) {
+            return;
+        }
+        BitSet rows = partitions.get(value);
+        if (rows != null) {
+            rows.clear(row);
+            if (rows.isEmpty()) {
+                partitions.remove(value);
+            }
+        }
+    }
+
+    /**
+     * 分区内的行号，分区不存在时返回空集合；返回的集合不可修改
+     */
+    BitSet rows(String value) {
+        BitSet rows = partitions.get(value);
+        return rows == null ? EMPTY : rows;
+    }
+
+    void clear() {
+        partitions.clear();
+    }
+
+    private String valueOf(Map<String, Object> metadata) {
+        Object value = metadata == null ? null : metadata.get(key);
+        return value == null ? null : value.toString();
+    }
+}
@@ -0,0 +1,100 @@
+package com.steven.ai.vectorstore;
+
+import java.util.Arrays;
+
+/**
+ * int8 标量量化的向量块，按行连续存放。
+ * <p>
+ * 每行独立量化：记录该行的最小值 min 与步长 scale = (max - min) / 255，
+ * 分量 v 编码为 round((v - min) / scale) - 128，解码为 (code + 128) * scale + min。
+ * 与查询向量 q 的点积可展开为 scale * (Σ q·code + 128 Σ q) + min * Σ q；
+ * 查询向量同样量化为 int8 后，扫描只需一次整数累加，无需解码。
+ */
+final class QuantizedVectors {
+
+    private final int dimensions;
+
+    private byte[] codes;
+
+    private float[] scales;
+
+    private float[] mins;
+
+    QuantizedVectors(int dimensions, int capacity) {
+        this.dimensions = dimensions;
+        this.codes = new byte[capacity * dimensions];
+        this.scales = new float[capacity];
+        this.mins = new float[capacity];
+    }
+
+    void ensureCapacity(int capacity) {
+        if (capacity > scales.length) {
+            codes = Arrays.copyOf(codes, capacity * dimensions);
+            scales = Arrays.copyOf(scales, capacity);
+            mins = Arrays.copyOf(mins, capacity);
+        }
+    }
+
+    void set(int row, float[] vector) {
+        float min = Float.POSITIVE_INFINITY;
+        float max = Float.NEGATIVE_INFINITY;
+        for (float v : vector) {
+            min = Math.min(min, v);
+            max = Math.max(max, v);
+        }
+        float scale = max > min ? (max - min) / 255f : 1f;
+        float inv = 1f / scale;
+        int offset = row * dimensions;
+        for (int i = 0; i < dimensions; i++) {
+            codes[offset + i] = (byte) (Math.round((vector[i] - min) * inv) - 128);
+        }
+        scales[row] = scale;
+        mins[row] = min;
+    }
+
+    void move(int from, int to) {
+        System.arraycopy(codes, from * dimensions, codes, to * dimensions, dimensions);
+        scales[to] = scales[from];
+        mins[to] = mins[from];
+    }
+
+    /**
+     * 查询向量与第 row 行的近似点积
+     */
+    float dot(Query query, int row) {
+        int offset = row * dimensions;
+        byte[] q = query.codes;
+        int sum = 0;
+        for (int i = 0; i < dimensions; i++) {
+            sum += q[i] * codes[offset + i];
+        }
+        return scales[row] * (sum * query.inverseScale + 128f * query.sum) + mins[row] * query.sum;
+    }
+
+    /**
+     * 把查询向量对称量化为 int8，使扫描的内层循环成为 byte × byte 的整数累加（可被 JIT 向量化）
+     */
+    static Query encode(float[] query) {
+        float maxAbs = 0f;
+        float sum = 0f;
+        for (float v : query) {
+            maxAbs = Math.max(maxAbs, Math.abs(v));
+            sum += v;
+        }
+        float scale = maxAbs > 0f ? 127f / maxAbs : 1f;
+        byte[] codes = new byte[query.length];
+        for (int i = 0; i < query.length; i++) {
+            codes[i] = (byte) Math.round(query[i] * scale);
+        }
+        return new Query(codes, 1f / scale, sum);
+    }
+
+    /**
+     * 量化后的查询向量
+     * @param codes int8 编码
+     * @param inverseScale 编码还原为原值的系数
+     * @param sum 原始查询向量各分量之和
+     */
+    record Query(byte[] codes, float inverseScale, float sum) {
+    }
+}
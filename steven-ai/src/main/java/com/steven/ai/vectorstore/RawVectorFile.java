@@ -0,0 +1,92 @@
+package com.steven.ai.vectorstore;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 按行定长存放全精度向量的临时文件，第 i 行位于 i * dimensions * 4。
+ * <p>
+ * 量化模式下堆内只保留 int8 编码，全精度向量写到这里，仅在重排候选和保存段文件时按行读取。
+ * 文件内容只在进程生命周期内有效，打开时清空，关闭时删除。
+ */
+final class RawVectorFile implements Closeable {
+
+    private final Path path;
+
+    private final int dimensions;
+
+    private final FileChannel channel;
+
+    RawVectorFile(Path path, int dimensions) {
+        this.path = path;
+        this.dimensions = dimensions;
+        try {
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open raw vector file " + path, e);
+        }
+    }
+
+    void write(int row, float[] vector) {
+        ByteBuffer buffer = ByteBuffer.allocate(dimensions * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asFloatBuffer().put(vector, 0, dimensions);
+        long position = offset(row);
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, position + buffer.position());
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 读取第 row 行到 target，可被多个线程同时调用
+     */
+    void read(int row, float[] target) {
+        ByteBuffer buffer = ByteBuffer.allocate(dimensions * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        long position = offset(row);
+        try {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new IOException("Row " + row + " is beyond the end of " + path);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        buffer.flip();
+        buffer.asFloatBuffer().get(target, 0, dimensions);
+    }
+
+    void move(int from, int to) {
+        float[] vector = new float[dimensions];
+        read(from, vector);
+        write(to, vector);
+    }
+
+    void truncate(int rows) {
+        try {
+            channel.truncate(offset(rows));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        Files.deleteIfExists(path);
+    }
+
+    private long offset(int row) {
+        return (long) row * dimensions * Float.BYTES;
+    }
+}
@@ -0,0 +1,199 @@
+package com.steven.ai.vectorstore;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.util.Assert;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * 检索结果缓存：(文件名, 归一化后的问题) -> 问题向量 + 检索命中的文档。
+ * <p>
+ * 同一文件上的重复提问直接返回上次的检索结果，省掉一次 embedding 请求和一次分区扫描；
+ * 检索参数（topK、阈值、过滤条件）不同时仍可复用已缓存的问题向量。
+ * 条目按 TTL 过期、按 LRU 淘汰；文件的文档发生变化时该文件下的检索结果全部失效，问题向量与文件内容无关，继续保留。
+ */
+public class RetrievalCache {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    // 不限定文件的检索记在这个分区下，任何文件变化都会使其失效
+    private static final String UNSCOPED = "";
+
+    private final int maxEntries;
+
+    private final long ttlMillis;
+
+    private final LinkedHashMap<Key, Entry> entries;
+
+    // 分区 -> 版本号，每次失效加一；检索前记下版本号，写回时版本号已变说明期间文档有变化，结果不写入缓存
+    private final Map<String, Long> generations = new HashMap<>();
+
+    private long globalGeneration;
+
+    private long hits;
+
+    private long misses;
+
+    /**
+     * @param maxEntries 最多缓存的问题数
+     * @param ttlMillis 条目存活时间
+     */
+    public RetrievalCache(int maxEntries, long ttlMillis) {
+        Assert.isTrue(maxEntries > 0, "maxEntries must be greater than 0");
+        Assert.isTrue(ttlMillis > 0, "ttlMillis must be greater than 0");
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > RetrievalCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * 检索前查询缓存
+     * @param partition 检索限定的文件名，不限定时为 null
+     * @param request 检索请求
+     * @return 查询结果，documents 非空表示检索结果命中，embedding 非空表示问题向量命中
+     */
+    synchronized Lookup lookup(String partition, SearchRequest request) {
+        Key key = new Key(partition == null ? UNSCOPED : partition, normalize(request.getQuery()));
+        String searchKey = searchKey(request);
+        long version = version(key.partition());
+        Entry entry = entries.get(key);
+        if (entry != null && entry.expiresAt < System.currentTimeMillis()) {
+            entries.remove(key);
+            entry = null;
+        }
+        if (entry == null) {
+            misses++;
+            return new Lookup(key, searchKey, version, null, null);
+        }
+        List<Document> documents = entry.results.get(searchKey);
+        if (documents == null) {
+            misses++;
+            return new Lookup(key, searchKey, version, entry.embedding, null);
+        }
+        hits++;
+        return new Lookup(key, searchKey, version, entry.embedding, copy(documents));
+    }
+
+    /**
+     * 写回检索结果；检索期间文件有变化时只保留问题向量
+     * @param lookup 检索前 {@link #lookup} 的返回值
+     * @param embedding 问题向量，检索未用到向量时为 null
+     * @param documents 检索结果
+     */
+    synchronized void put(Lookup lookup, float[] embedding, List<Document> documents) {
+        long now = System.currentTimeMillis();
+        Entry entry = entries.get(lookup.key);
+        if (entry == null || entry.expiresAt < now) {
+            entry = new Entry(embedding, now + ttlMillis);
+            entries.put(lookup.key, entry);
+        } else if (entry.embedding == null) {
+            entry.embedding = embedding;
+        }
+        if (version(lookup.key.partition()) == lookup.version) {
+            entry.results.put(lookup.searchKey, copy(documents));
+        }
+    }
+
+    /**
+     * 文件的文档发生变化，使该文件以及不限定文件的检索结果失效
+     * @param partition 文件名，为 null 时只影响不限定文件的检索
+     */
+    public synchronized void invalidate(String partition) {
+        bump(UNSCOPED);
+        if (partition != null) {
+            bump(partition);
+        }
+        entries.forEach((key, entry) -> {
+            if (key.partition().equals(UNSCOPED) || key.partition().equals(partition)) {
+                entry.results.clear();
+            }
+        });
+    }
+
+    /**
+     * 全库数据被替换，使所有检索结果失效
+     */
+    public synchronized void invalidateAll() {
+        globalGeneration++;
+        entries.values().forEach(entry -> entry.results.clear());
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    // 两个计数都只增不减，任意一个变化都会使和变化
+    private long version(String partition) {
+        return globalGeneration + generations.getOrDefault(partition, 0L);
+    }
+
+    private void bump(String partition) {
+        generations.merge(partition, 1L, Long::sum);
+    }
+
+    // 问题做 NFKC 归一化、折叠空白并转小写，只有排版差异的重复提问也能命中
+    static String normalize(String query) {
+        String normalized = Normalizer.normalize(query == null ? "" : query, Normalizer.Form.NFKC);
+        return WHITESPACE.matcher(normalized).replaceAll(" ").trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static String searchKey(SearchRequest request) {
+        return request.getTopK() + "|" + request.getSimilarityThreshold() + "|"
+                + (request.hasFilterExpression() ? request.getFilterExpression() : "");
+    }
+
+    // 文档的元数据是可变的，进出缓存都复制一份，调用方修改结果不会影响缓存
+    private static List<Document> copy(List<Document> documents) {
+        List<Document> result = new ArrayList<>(documents.size());
+        for (Document document : documents) {
+            result.add(Document.builder()
+                    .id(document.getId())
+                    .text(document.getText())
+                    .metadata(new HashMap<>(document.getMetadata()))
+                    .score(document.getScore())
+                    .build());
+        }
+        return result;
+    }
+
+    private record Key(String partition, String query) {
+    }
+
+    private static final class Entry {
+
+        // 关键词查询不调用 embedding，此时为 null
+        private float[] embedding;
+
+        private final long expiresAt;
+
+        // 检索参数 -> 结果
+        private final Map<String, List<Document>> results = new HashMap<>();
+
+        private Entry(float[] embedding, long expiresAt) {
+            this.embedding = embedding;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * 一次缓存查询的结果，检索完成后原样交给 {@link #put}
+     */
+    record Lookup(Key key, String searchKey, long version, float[] embedding, List<Document> documents) {
+    }
+}
@@ -0,0 +1,844 @@
+package com.steven.ai.vectorstore;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.AbstractVectorStoreBuilder;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.SimpleVectorStoreContent;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.observation.VectorStoreObservationContext;
+import org.springframework.util.Assert;
+
+import java.io.Closeable;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * 分段的写时复制向量库，导入大文件时检索不被阻塞。
+ * <p>
+ * 新文档追加到一个小的活动段，写满 segmentSize 行后封存为只读段并新开活动段。
+ * 所有段以及每段的删除位图组成一个不可变快照，写入方每写完一批整体替换一次快照；
+ * 检索只读取开始时拿到的快照，全程不加锁，也不会看到写了一半的批次。
+ * <p>
+ * 段内数组容量固定、行只追加，已发布的行不再修改；覆盖和删除只在新快照的删除位图副本上打标记。
+ * 后台合并线程按大小分层，把同一层中满 mergeFactor 个的段（以及删除超过一半的段）合并为一个段并丢弃已删除的行，
+ * 合并基于快照离线完成，替换时补上合并期间发生的删除。
+ * <p>
+ * 设置 prefixDimensions 后，每行另存向量前 prefixDimensions 维截断并重新归一化的短向量：
+ * 检索先在短向量上扫描选出 topK * prefixCandidateFactor 个候选，再只对候选用全维向量重排，相似度阈值只作用于全维得分。
+ * 1024 维截断到 256 维时，扫描的计算量约为全维的 1/4，召回率可用 {@link #recall} 对照全维精确检索估算。
+ * <p>
+ * 所有向量都在堆上，{@link #load(Path)} 会把段文件整体复制进来；语料大、堆内存紧张时应使用保留只读映射的 FlatVectorStore。
+ */
+@Slf4j
+public class SegmentedVectorStore extends AbstractLocalVectorStore implements Closeable {
+
+    // 删除超过该比例的段单独重写
+    private static final double PURGE_DELETED_RATIO = 0.5;
+
+    private final int segmentSize;
+
+    private final int mergeFactor;
+
+    // 短向量维度，0 表示不做两阶段检索
+    private final int prefixDimensions;
+
+    private final int prefixCandidateFactor;
+
+    // 写入、删除与合并结果的替换互斥，检索不需要
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    private volatile Snapshot snapshot = new Snapshot(List.of());
+
+    // 当前追加的段，写满后封存
+    private Segment active;
+
+    // 文档id -> 所在位置，先写段数据再写入，读取方可不加锁查询
+    private final Map<String, Location> locations = new ConcurrentHashMap<>();
+
+    private final ExecutorService merger;
+
+    private final AtomicBoolean mergeScheduled = new AtomicBoolean();
+
+    protected SegmentedVectorStore(SegmentedVectorStoreBuilder builder) {
+        super(builder, builder.dimensions, builder.retrievalCache, builder.lexicalIndex);
+        this.segmentSize = builder.segmentSize;
+        this.mergeFactor = builder.mergeFactor;
+        this.prefixDimensions = builder.prefixDimensions < builder.dimensions ? builder.prefixDimensions : 0;
+        this.prefixCandidateFactor = builder.prefixCandidateFactor;
+        this.merger = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "vector-store-merger");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static SegmentedVectorStoreBuilder builder(EmbeddingModel embeddingModel) {
+        return new SegmentedVectorStoreBuilder(embeddingModel);
+    }
+
+    @Override
+    protected void write(List<Document> documents, List<float[]> embeddings) {
+        writeLock.lock();
+        try {
+            // 先校验并归一化整批向量：append 会推进活动段、更新位置，中途失败会留下未发布的行
+            List<float[]> normalized = new ArrayList<>(embeddings.size());
+            for (float[] embedding : embeddings) {
+                normalized.add(checkedNormalize(embedding));
+            }
+            Mutation mutation = new Mutation(snapshot);
+            for (int i = 0; i < documents.size(); i++) {
+                Document document = documents.get(i);
+                mutation.delete(locations.get(document.getId()));
+                locations.put(document.getId(), mutation.append(document.getId(), document.getText(), document.getMetadata(), normalized.get(i)));
+            }
+            publish(mutation);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    protected void erase(List<String> idList) {
+        writeLock.lock();
+        try {
+            Mutation mutation = new Mutation(snapshot);
+            for (String id : idList) {
+                mutation.delete(locations.remove(id));
+            }
+            publish(mutation);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    protected List<String> erase(Filter.Expression filterExpression) {
+        Predicate<Map<String, Object>> predicate = filterPredicate(filterExpression);
+        String partition = partitionOf(filterExpression);
+        List<String> matched = new ArrayList<>();
+        writeLock.lock();
+        try {
+            Snapshot current = snapshot;
+            for (View view : current.views()) {
+                if (!view.mayContain(partition)) {
+                    continue;
+                }
+                Segment segment = view.segment();
+                int[] rows = view.rowsOf(partition);
+                int count = rows == null ? view.size() : rows.length;
+                for (int i = 0; i < count; i++) {
+                    int row = rows == null ? i : rows[i];
+                    if (!view.deleted().get(row) && (partition == null || partition.equals(segment.partitions[row]))
+                            && predicate.test(segment.metadatas[row])) {
+                        matched.add(segment.ids[row]);
+                    }
+                }
+            }
+            Mutation mutation = new Mutation(current);
+            for (String id : matched) {
+                mutation.delete(locations.remove(id));
+            }
+            publish(mutation);
+        } finally {
+            writeLock.unlock();
+        }
+        return matched;
+    }
+
+    @Override
+    protected List<Document> search(SearchRequest request, float[] query) {
+        Filter.Expression filterExpression = request.hasFilterExpression() ? request.getFilterExpression() : null;
+        // 带分区条件时跳过不含该文件的段，纯分区条件无需再求值过滤表达式
+        String partition = partitionOf(filterExpression);
+        Predicate<Map<String, Object>> predicate = filterExpression == null || (partition != null && isPartitionOnly(filterExpression))
+                ? null : filterPredicate(filterExpression);
+        float threshold = (float) request.getSimilarityThreshold();
+
+        List<View> views = snapshot.views();
+        int[] offsets = offsets(views);
+        TopKHeap heap;
+        if (prefixDimensions > 0) {
+            // 第一遍在短向量上选候选（不判断阈值），第二遍用全维向量重排
+            TopKHeap candidates = scan(views, offsets, prefixOf(query), true, request.getTopK() * prefixCandidateFactor,
+                    Float.NEGATIVE_INFINITY, partition, predicate);
+            heap = rerank(views, offsets, query, candidates, request.getTopK(), threshold);
+        } else {
+            heap = scan(views, offsets, query, false, request.getTopK(), threshold, partition, predicate);
+        }
+        float[] scores = new float[heap.size()];
+        int[] slots = heap.drainSlotsDescending(scores);
+        List<Document> result = new ArrayList<>(slots.length);
+        for (int i = 0; i < slots.length; i++) {
+            int v = locate(offsets, slots[i]);
+            Segment segment = views.get(v).segment();
+            int row = slots[i] - offsets[v];
+            result.add(toDocument(segment.ids[row], segment.texts[row], segment.metadatas[row], scores[i]));
+        }
+        return result;
+    }
+
+    /**
+     * 两阶段检索相对全维精确检索的召回率：抽样已有的行作为查询，比较两者的 top k
+     * @param samples 抽样查询数
+     * @param k 每次比较的结果数
+     */
+    public double recall(int samples, int k) {
+        List<View> views = snapshot.views();
+        int[] offsets = offsets(views);
+        int total = views.isEmpty() ? 0 : offsets[offsets.length - 1] + views.get(views.size() - 1).size();
+        if (prefixDimensions == 0 || total == 0) {
+            return 1.0;
+        }
+        Random sampler = new Random(7);
+        double sum = 0;
+        int measured = 0;
+        for (int attempt = 0; measured < samples && attempt < samples * 10; attempt++) {
+            int slot = sampler.nextInt(total);
+            int v = locate(offsets, slot);
+            int row = slot - offsets[v];
+            if (views.get(v).deleted().get(row)) {
+                continue;
+            }
+            Segment segment = views.get(v).segment();
+            float[] query = Arrays.copyOfRange(segment.vectors, row * dimensions, (row + 1) * dimensions);
+            TopKHeap candidates = scan(views, offsets, prefixOf(query), true, k * prefixCandidateFactor, Float.NEGATIVE_INFINITY, null, null);
+            int[] approximate = rerank(views, offsets, query, candidates, k, Float.NEGATIVE_INFINITY).drainSlotsDescending(null);
+            int[] truth = scan(views, offsets, query, false, k, Float.NEGATIVE_INFINITY, null, null).drainSlotsDescending(null);
+            Set<Integer> expected = new HashSet<>();
+            for (int exact : truth) {
+                expected.add(exact);
+            }
+            int hit = 0;
+            for (int found : approximate) {
+                if (expected.contains(found)) {
+                    hit++;
+                }
+            }
+            sum += truth.length == 0 ? 1.0 : (double) hit / truth.length;
+            measured++;
+        }
+        return measured == 0 ? 1.0 : sum / measured;
+    }
+
+    public boolean isTwoStage() {
+        return prefixDimensions > 0;
+    }
+
+    // 扫描快照中的全部段，各段的行按快照中的顺序连续编号记入堆
+    private TopKHeap scan(List<View> views, int[] offsets, float[] query, boolean prefix, int limit, float threshold,
+                          String partition, Predicate<Map<String, Object>> predicate) {
+        int stride = prefix ? prefixDimensions : dimensions;
+        TopKHeap heap = new TopKHeap(limit);
+        for (int v = 0; v < views.size(); v++) {
+            View view = views.get(v);
+            if (!view.mayContain(partition)) {
+                continue;
+            }
+            Segment segment = view.segment();
+            float[] vectors = prefix ? segment.prefixes : segment.vectors;
+            BitSet deleted = view.deleted();
+            // 封存段按分区行号表只遍历该文件的行，活动段逐行判断
+            int[] rows = view.rowsOf(partition);
+            int count = rows == null ? view.size() : rows.length;
+            for (int i = 0; i < count; i++) {
+                int row = rows == null ? i : rows[i];
+                if (deleted.get(row)
+                        || (partition != null && !partition.equals(segment.partitions[row]))
+                        || (predicate != null && !predicate.test(segment.metadatas[row]))) {
+                    continue;
+                }
+                float score = dot(query, vectors, row * stride, stride);
+                if (score >= threshold && score > heap.minScore()) {
+                    heap.offer(offsets[v] + row, score);
+                }
+            }
+        }
+        return heap;
+    }
+
+    // 用全维向量为候选重新打分
+    private TopKHeap rerank(List<View> views, int[] offsets, float[] query, TopKHeap candidates, int topK, float threshold) {
+        TopKHeap heap = new TopKHeap(topK);
+        for (int slot : candidates.drainSlotsDescending(null)) {
+            int v = locate(offsets, slot);
+            float score = dot(query, views.get(v).segment().vectors, (slot - offsets[v]) * dimensions, dimensions);
+            if (score >= threshold && score > heap.minScore()) {
+                heap.offer(slot, score);
+            }
+        }
+        return heap;
+    }
+
+    private float[] prefixOf(float[] vector) {
+        return truncate(vector, prefixDimensions);
+    }
+
+    // 取前 dimensions 维并重新归一化；前缀全为 0 时保持为 0，该行在第一遍中得分为 0
+    private static float[] truncate(float[] vector, int dimensions) {
+        float[] prefix = Arrays.copyOf(vector, dimensions);
+        double norm = 0.0;
+        for (float v : prefix) {
+            norm += v * v;
+        }
+        if (norm > 0.0) {
+            float inv = (float) (1.0 / Math.sqrt(norm));
+            for (int i = 0; i < dimensions; i++) {
+                prefix[i] *= inv;
+            }
+        }
+        return prefix;
+    }
+
+    private static int[] offsets(List<View> views) {
+        int[] offsets = new int[views.size()];
+        int offset = 0;
+        for (int v = 0; v < views.size(); v++) {
+            offsets[v] = offset;
+            offset += views.get(v).size();
+        }
+        return offsets;
+    }
+
+    // 连续编号所在的段：取最后一个起点不大于该编号的段（空段与下一段起点相同）
+    private static int locate(int[] offsets, int slot) {
+        int v = Arrays.binarySearch(offsets, slot);
+        if (v < 0) {
+            return -v - 2;
+        }
+        while (v + 1 < offsets.length && offsets[v + 1] == slot) {
+            v++;
+        }
+        return v;
+    }
+
+    @Override
+    protected List<Document> documents(List<String> idList) {
+        List<Document> result = new ArrayList<>(idList.size());
+        for (String id : idList) {
+            Location location = locations.get(id);
+            if (location != null) {
+                Segment segment = location.segment();
+                result.add(toDocument(id, segment.texts[location.row()], segment.metadatas[location.row()]));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public int size() {
+        return snapshot.views().stream().mapToInt(View::live).sum();
+    }
+
+    /**
+     * 快照中的段数，包括活动段
+     */
+    public int segmentCount() {
+        return snapshot.views().size();
+    }
+
+    @Override
+    public void save(Path path) {
+        // 基于快照保存，不阻塞写入与检索
+        List<View> views = snapshot.views();
+        int live = views.stream().mapToInt(View::live).sum();
+        Segment[] segments = new Segment[live];
+        int[] rows = new int[live];
+        int n = 0;
+        for (View view : views) {
+            for (int row = 0; row < view.size(); row++) {
+                if (!view.deleted().get(row)) {
+                    segments[n] = view.segment();
+                    rows[n++] = row;
+                }
+            }
+        }
+        writeSegment(path, new MappedSegment.Records() {
+            @Override
+            public int size() {
+                return rows.length;
+            }
+
+            @Override
+            public String id(int row) {
+                return segments[row].ids[rows[row]];
+            }
+
+            @Override
+            public String text(int row) {
+                return segments[row].texts[rows[row]];
+            }
+
+            @Override
+            public Map<String, Object> metadata(int row) {
+                return segments[row].metadatas[rows[row]];
+            }
+
+            @Override
+            public void copyVector(int row, float[] target) {
+                System.arraycopy(segments[row].vectors, rows[row] * dimensions, target, 0, dimensions);
+            }
+        });
+    }
+
+    @Override
+    public void load(Path path) {
+        MappedSegment mapped = openSegment(path);
+        // 段文件整体复制到堆上的一个封存段，不像 FlatVectorStore 那样保留只读映射：短向量由全维向量截断得出、不在段文件中，
+        // 检索与合并也都直接读写段内的 float 数组。代价是堆上常驻 行数 × (dimensions + prefixDimensions) × 4 字节，启动时间随文件大小增长
+        Segment segment = new Segment(mapped.size(), dimensions, prefixDimensions);
+        float[] vector = new float[dimensions];
+        for (int row = 0; row < mapped.size(); row++) {
+            mapped.copyVector(row, vector);
+            segment.set(row, mapped.id(row), mapped.text(row), mapped.metadata(row), vector);
+        }
+        replace(segment, mapped.size());
+        reloaded(mapped);
+    }
+
+    @Override
+    protected void restore(Collection<SimpleVectorStoreContent> contents) {
+        Segment segment = new Segment(contents.size(), dimensions, prefixDimensions);
+        int row = 0;
+        for (SimpleVectorStoreContent content : contents) {
+            segment.set(row++, content.getId(), content.getText(), content.getMetadata(), checkedNormalize(content.getEmbedding()));
+        }
+        replace(segment, row);
+    }
+
+    @Override
+    public VectorStoreObservationContext.Builder createObservationContextBuilder(String operationName) {
+        return VectorStoreObservationContext.builder("segmented", operationName)
+                .dimensions(dimensions)
+                .collectionName("in-memory-segmented")
+                .similarityMetric("cosine");
+    }
+
+    @Override
+    public void close() {
+        merger.shutdownNow();
+    }
+
+    // 用一个封存段替换全部数据
+    private void replace(Segment segment, int size) {
+        writeLock.lock();
+        try {
+            locations.clear();
+            // 同id的文档后出现的生效
+            BitSet deleted = new BitSet();
+            for (int row = 0; row < size; row++) {
+                Location previous = locations.put(segment.ids[row], new Location(segment, row));
+                if (previous != null) {
+                    deleted.set(previous.row());
+                }
+            }
+            active = null;
+            snapshot = new Snapshot(size == 0 ? List.of() : List.of(View.sealed(segment, size, deleted)));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // 发布新快照，调用方需持有写锁
+    private void publish(Mutation mutation) {
+        if (!mutation.changed) {
+            return;
+        }
+        snapshot = new Snapshot(List.copyOf(mutation.views));
+        // 封存了新段或删除了行时检查是否需要合并
+        if (mutation.sealed || mutation.deleted) {
+            scheduleMerge();
+        }
+    }
+
+    private void scheduleMerge() {
+        if (mergeScheduled.compareAndSet(false, true)) {
+            try {
+                merger.execute(this::mergeLoop);
+            } catch (RuntimeException e) {
+                mergeScheduled.set(false);
+                log.warn("Failed to schedule segment merge.", e);
+            }
+        }
+    }
+
+    private void mergeLoop() {
+        mergeScheduled.set(false);
+        try {
+            while (mergeOnce()) {
+                // 一次合并可能使上一层凑满，继续检查
+            }
+        } catch (RuntimeException e) {
+            log.error("Failed to merge vector store segments.", e);
+        }
+    }
+
+    /**
+     * 选出一组需要合并的封存段并合并
+     * @return 是否做了合并
+     */
+    boolean mergeOnce() {
+        Snapshot captured = snapshot;
+        List<View> candidates = selectMergeCandidates(captured);
+        if (candidates.isEmpty()) {
+            return false;
+        }
+        long start = System.nanoTime();
+        // 1.离线复制存活行，不持有锁
+        int live = candidates.stream().mapToInt(View::live).sum();
+        Segment merged = new Segment(live, dimensions, prefixDimensions);
+        Segment[] sources = new Segment[live];
+        int[] sourceRows = new int[live];
+        int n = 0;
+        for (View view : candidates) {
+            Segment segment = view.segment();
+            for (int row = 0; row < view.size(); row++) {
+                if (!view.deleted().get(row)) {
+                    merged.copyFrom(n, segment, row);
+                    sources[n] = segment;
+                    sourceRows[n++] = row;
+                }
+            }
+        }
+        // 2.在写锁内补上合并期间的删除，更新位置并替换快照
+        writeLock.lock();
+        try {
+            List<View> views = new ArrayList<>(snapshot.views());
+            Map<Segment, View> current = new IdentityHashMap<>();
+            views.forEach(view -> current.put(view.segment(), view));
+            for (View view : candidates) {
+                if (!current.containsKey(view.segment())) {
+                    // 期间整体重新加载过，放弃本次合并
+                    return false;
+                }
+            }
+            BitSet deleted = new BitSet();
+            for (int row = 0; row < live; row++) {
+                if (current.get(sources[row]).deleted().get(sourceRows[row])) {
+                    deleted.set(row);
+                } else {
+                    locations.put(merged.ids[row], new Location(merged, row));
+                }
+            }
+            int position = views.indexOf(current.get(candidates.get(0).segment()));
+            for (View view : candidates) {
+                views.remove(current.get(view.segment()));
+            }
+            if (live > 0) {
+                views.add(Math.min(position, views.size()), View.sealed(merged, live, deleted));
+            }
+            snapshot = new Snapshot(List.copyOf(views));
+        } finally {
+            writeLock.unlock();
+        }
+        log.debug("Merged {} segments into {} rows in {} ms", candidates.size(), live,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return true;
+    }
+
+    // 按存活行数分层（第 k 层为 segmentSize * mergeFactor^k 量级），某层凑满 mergeFactor 个时合并该层；否则重写删除过半的段
+    private List<View> selectMergeCandidates(Snapshot captured) {
+        Map<Integer, List<View>> tiers = new TreeMap<>();
+        for (View view : captured.views()) {
+            if (!view.isSealed()) {
+                continue;
+            }
+            if (view.size() > 0 && view.deletedCount() >= view.size() * PURGE_DELETED_RATIO) {
+                return List.of(view);
+            }
+            int tier = 0;
+            for (long bound = segmentSize; view.live() > bound; bound *= mergeFactor) {
+                tier++;
+            }
+            tiers.computeIfAbsent(tier, k -> new ArrayList<>()).add(view);
+        }
+        for (List<View> tier : tiers.values()) {
+            if (tier.size() >= mergeFactor) {
+                return tier.subList(0, mergeFactor);
+            }
+        }
+        return List.of();
+    }
+
+    /**
+     * 一批写入对快照的修改：复制视图列表，删除位图按段写时复制，最后整体发布
+     */
+    private final class Mutation {
+
+        private final List<View> views;
+
+        // 本批已复制过删除位图的段，同一批内多次删除只复制一次
+        private final Set<Segment> copied = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        private boolean changed;
+
+        private boolean sealed;
+
+        private boolean deleted;
+
+        private Mutation(Snapshot base) {
+            this.views = new ArrayList<>(base.views());
+        }
+
+        private void delete(Location location) {
+            if (location == null) {
+                return;
+            }
+            int index = indexOf(location.segment());
+            View view = views.get(index);
+            BitSet deleted = view.deleted();
+            if (copied.add(location.segment())) {
+                deleted = (BitSet) deleted.clone();
+            }
+            deleted.set(location.row());
+            views.set(index, new View(view.segment(), view.size(), deleted, view.deletedCount() + 1, view.partitionRows()));
+            changed = true;
+            this.deleted = true;
+        }
+
+        private Location append(String id, String text, Map<String, Object> metadata, float[] normalized) {
+            int index = active == null ? -1 : indexOf(active);
+            if (index < 0 || views.get(index).size() == active.capacity()) {
+                if (index >= 0) {
+                    // 活动段写满，封存
+                    View full = views.get(index);
+                    views.set(index, View.sealed(full.segment(), full.size(), full.deleted(), full.deletedCount()));
+                    sealed = true;
+                }
+                active = new Segment(segmentSize, dimensions, prefixDimensions);
+                views.add(new View(active, 0, new BitSet(), 0, null));
+                copied.add(active);
+                index = views.size() - 1;
+            }
+            View view = views.get(index);
+            int row = view.size();
+            active.set(row, id, text, metadata, normalized);
+            views.set(index, new View(active, row + 1, view.deleted(), view.deletedCount(), null));
+            changed = true;
+            return new Location(active, row);
+        }
+
+        private int indexOf(Segment segment) {
+            for (int i = views.size() - 1; i >= 0; i--) {
+                if (views.get(i).segment() == segment) {
+                    return i;
+                }
+            }
+            throw new IllegalStateException("Segment is not part of the snapshot");
+        }
+    }
+
+    /**
+     * 段数据：容量固定，行只追加，发布后不再修改
+     */
+    private static final class Segment {
+
+        private final float[] vectors;
+
+        private final String[] ids;
+
+        private final String[] texts;
+
+        private final Map<String, Object>[] metadatas;
+
+        // 每行的 file_name，活动段按文件检索时逐行比较，封存段据此建立分区行号表
+        private final String[] partitions;
+
+        // 截断并重新归一化的短向量，未开启两阶段检索时为 null
+        private final float[] prefixes;
+
+        private final int dimensions;
+
+        private final int prefixDimensions;
+
+        @SuppressWarnings("unchecked")
+        private Segment(int capacity, int dimensions, int prefixDimensions) {
+            this.dimensions = dimensions;
+            this.prefixDimensions = prefixDimensions;
+            this.vectors = new float[capacity * dimensions];
+            this.prefixes = prefixDimensions > 0 ? new float[capacity * prefixDimensions] : null;
+            this.ids = new String[capacity];
+            this.texts = new String[capacity];
+            this.metadatas = new Map[capacity];
+            this.partitions = new String[capacity];
+        }
+
+        private int capacity() {
+            return ids.length;
+        }
+
+        private void set(int row, String id, String text, Map<String, Object> metadata, float[] normalized) {
+            System.arraycopy(normalized, 0, vectors, row * dimensions, dimensions);
+            if (prefixes != null) {
+                System.arraycopy(truncate(normalized, prefixDimensions), 0, prefixes, row * prefixDimensions, prefixDimensions);
+            }
+            ids[row] = id;
+            texts[row] = text;
+            metadatas[row] = Collections.unmodifiableMap(new HashMap<>(metadata));
+            Object partition = metadata.get(PARTITION_KEY);
+            partitions[row] = partition == null ? null : partition.toString();
+        }
+
+        private void copyFrom(int row, Segment source, int sourceRow) {
+            System.arraycopy(source.vectors, sourceRow * dimensions, vectors, row * dimensions, dimensions);
+            if (prefixes != null) {
+                System.arraycopy(source.prefixes, sourceRow * prefixDimensions, prefixes, row * prefixDimensions, prefixDimensions);
+            }
+            ids[row] = source.ids[sourceRow];
+            texts[row] = source.texts[sourceRow];
+            metadatas[row] = source.metadatas[sourceRow];
+            partitions[row] = source.partitions[sourceRow];
+        }
+    }
+
+    /**
+     * 快照中的一个段，发布后不可变
+     * @param size 可见的行数
+     * @param deleted 已删除的行
+     * @param partitionRows 封存段内每个文件名的行号（升序），活动段为 null（需逐行判断）
+     */
+    private record View(Segment segment, int size, BitSet deleted, int deletedCount, Map<String, int[]> partitionRows) {
+
+        private static View sealed(Segment segment, int size, BitSet deleted) {
+            return sealed(segment, size, deleted, deleted.cardinality());
+        }
+
+        private static View sealed(Segment segment, int size, BitSet deleted, int deletedCount) {
+            // 重新加载时全库是一个封存段，按文件的检索只遍历该文件的行，不逐行比较文件名
+            Map<String, BitSet> grouped = new HashMap<>();
+            for (int row = 0; row < size; row++) {
+                String partition = segment.partitions[row];
+                if (partition != null) {
+                    grouped.computeIfAbsent(partition, p -> new BitSet()).set(row);
+                }
+            }
+            Map<String, int[]> partitionRows = new HashMap<>(grouped.size() * 2);
+            grouped.forEach((partition, rows) -> partitionRows.put(partition, rows.stream().toArray()));
+            return new View(segment, size, deleted, deletedCount, partitionRows);
+        }
+
+        private int live() {
+            return size - deletedCount;
+        }
+
+        private boolean isSealed() {
+            return partitionRows != null;
+        }
+
+        private boolean mayContain(String partition) {
+            return partition == null || partitionRows == null || partitionRows.containsKey(partition);
+        }
+
+        /**
+         * 封存段中属于该文件的行号；不限文件或活动段返回 null，表示遍历全部行
+         */
+        private int[] rowsOf(String partition) {
+            if (partition == null || partitionRows == null) {
+                return null;
+            }
+            int[] rows = partitionRows.get(partition);
+            return rows == null ? new int[0] : rows;
+        }
+    }
+
+    private record Snapshot(List<View> views) {
+    }
+
+    private record Location(Segment segment, int row) {
+    }
+
+    public static final class SegmentedVectorStoreBuilder extends AbstractVectorStoreBuilder<SegmentedVectorStoreBuilder> {
+
+        private int dimensions = 1024;
+
+        private int segmentSize = 1024;
+
+        private int mergeFactor = 4;
+
+        private int prefixDimensions;
+
+        private int prefixCandidateFactor = 8;
+
+        private RetrievalCache retrievalCache;
+
+        private LexicalIndex lexicalIndex;
+
+        private SegmentedVectorStoreBuilder(EmbeddingModel embeddingModel) {
+            super(embeddingModel);
+        }
+
+        /**
+         * 向量维度，需与 embedding 模型输出一致
+         */
+        public SegmentedVectorStoreBuilder dimensions(int dimensions) {
+            this.dimensions = dimensions;
+            return this;
+        }
+
+        /**
+         * 活动段写满多少行后封存
+         */
+        public SegmentedVectorStoreBuilder segmentSize(int segmentSize) {
+            Assert.isTrue(segmentSize > 0, "segmentSize must be greater than 0");
+            this.segmentSize = segmentSize;
+            return this;
+        }
+
+        /**
+         * 同一大小层的段凑满多少个时合并
+         */
+        public SegmentedVectorStoreBuilder mergeFactor(int mergeFactor) {
+            Assert.isTrue(mergeFactor >= 2, "mergeFactor must be at least 2");
+            this.mergeFactor = mergeFactor;
+            return this;
+        }
+
+        /**
+         * 两阶段检索的短向量维度，0 或不小于向量维度时不开启
+         */
+        public SegmentedVectorStoreBuilder prefixDimensions(int prefixDimensions) {
+            Assert.isTrue(prefixDimensions >= 0, "prefixDimensions must not be negative");
+            this.prefixDimensions = prefixDimensions;
+            return this;
+        }
+
+        /**
+         * 两阶段检索时参与全维重排的候选数为 topK 的倍数
+         */
+        public SegmentedVectorStoreBuilder prefixCandidateFactor(int prefixCandidateFactor) {
+            Assert.isTrue(prefixCandidateFactor >= 1, "prefixCandidateFactor must be at least 1");
+            this.prefixCandidateFactor = prefixCandidateFactor;
+            return this;
+        }
+
+        /**
+         * 检索结果缓存，为 null 时不缓存
+         */
+        public SegmentedVectorStoreBuilder retrievalCache(RetrievalCache retrievalCache) {
+            this.retrievalCache = retrievalCache;
+            return this;
+        }
+
+        /**
+         * 关键词倒排索引，设置后检索为关键词与向量的混合检索，为 null 时只做向量检索
+         */
+        public SegmentedVectorStoreBuilder lexicalIndex(LexicalIndex lexicalIndex) {
+            this.lexicalIndex = lexicalIndex;
+            return this;
+        }
+
+        @Override
+        public SegmentedVectorStore build() {
+            return new SegmentedVectorStore(this);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.steven.ai.vectorstore;
+
+/**
+ * 定长小顶堆，用于在线性扫描中挑选得分最高的 K 个槽位。
+ * 分数与槽位都用基本类型数组保存，扫描过程中不产生装箱对象。
+ */
+class TopKHeap {
+
+    private final float[] scores;
+    private final int[] slots;
+    private int size;
+
+    TopKHeap(int k) {
+        this.scores = new float[Math.max(k, 1)];
+        this.slots = new int[Math.max(k, 1)];
+    }
+
+    /**
+     * 尝试加入一个候选，堆满时只有比堆顶更高的分数才会替换堆顶
+     */
+    void offer(int slot, float score) {
+        if (size < scores.length) {
+            scores[size] = score;
+            slots[size] = slot;
+            siftUp(size++);
+        } else if (score > scores[0]) {
+            scores[0] = score;
+            slots[0] = slot;
+            siftDown(0);
+        }
+    }
+
+    /**
+     * 当前堆中的最低分，堆未满时返回负无穷，便于调用方做剪枝
+     */
+    float minScore() {
+        return size < scores.length ? Float.NEGATIVE_INFINITY : scores[0];
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * 按分数从高到低导出槽位，导出后堆被清空
+     */
+    int[] drainSlotsDescending(float[] outScores) {
+        int n = size;
+        int[] result = new int[n];
+        for (int i = n - 1; i >= 0; i--) {
+            result[i] = slots[0];
+            if (outScores != null) {
+                outScores[i] = scores[0];
+            }
+            size--;
+            scores[0] = scores[size];
+            slots[0] = slots[size];
+            siftDown(0);
+        }
+        return result;
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (scores[i] >= scores[parent]) {
+                break;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int left = 2 * i + 1;
+            if (left >= size) {
+                break;
+            }
+            int right = left + 1;
+            int smallest = right < size && scores[right] < scores[left] ? right : left;
+            if (scores[i] <= scores[smallest]) {
+                break;
+            }
+            swap(i, smallest);
+            i = smallest;
+        }
+    }
+
+    private void swap(int a, int b) {
+        float s = scores[a];
+        scores[a] = scores[b];
+        scores[b] = s;
+        int t = slots[a];
+        slots[a] = slots[b];
+        slots[b] = t;
+    }
+}
@@ -0,0 +1,342 @@
+package com.steven.ai.vectorstore;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * 向量库写前日志（WAL），记录快照之后的每一次写入与删除。
+ * <p>
+ * 日志按代分文件：{name}.1、{name}.2 ……，每次启动和每次压实都从新的一代开始写。
+ * 每条记录为 [长度 4B][CRC32 4B][内容]，内容第一个字节为类型：
+ * <pre>
+ * ADD    条数 | 每条：id | text | metadata(JSON) | 维度 | 向量
+ * DELETE 条数 | 每条：id
+ * </pre>
+ * 写入只追加不刷盘，调用方随后调用 {@link #sync} 等待落盘；并发的多个写入由先到的线程一次 fsync 一起提交（group commit）。
+ * 两类操作都是按 id 的覆盖写，重放顺序与写入顺序一致即可在任意快照上得到正确结果。
+ */
+@Slf4j
+public class WriteAheadLog implements Closeable {
+
+    private static final byte ADD = 1;
+
+    private static final byte DELETE = 2;
+
+    private static final int RECORD_HEADER = 8;
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static final TypeReference<HashMap<String, Object>> METADATA_TYPE = new TypeReference<>() {
+    };
+
+    private final Path directory;
+
+    private final String name;
+
+    private final Object appendLock = new Object();
+
+    private final Object syncLock = new Object();
+
+    private FileChannel channel;
+
+    private long generation;
+
+    // 累计追加的字节数（跨代），作为写入位置
+    private long appended;
+
+    private volatile long synced;
+
+    /**
+     * @param path 日志文件名前缀，实际文件为 path.{代}
+     */
+    public WriteAheadLog(Path path) {
+        Path absolute = path.toAbsolutePath();
+        this.directory = absolute.getParent();
+        this.name = absolute.getFileName().toString();
+        List<Long> generations = generations();
+        this.generation = generations.isEmpty() ? 1 : generations.get(generations.size() - 1) + 1;
+        this.channel = open(generation);
+    }
+
+    /**
+     * 一次重放中读到的操作
+     */
+    public interface Replayer {
+
+        void add(List<Document> documents, List<float[]> embeddings);
+
+        void delete(List<String> ids);
+    }
+
+    /**
+     * 按代、按写入顺序重放当前代之前的全部日志；文件末尾不完整的记录（写入中途崩溃）会被截掉
+     * @return 重放的记录数
+     */
+    public int replay(Replayer replayer) {
+        int records = 0;
+        for (long existing : generations()) {
+            if (existing >= generation) {
+                continue;
+            }
+            records += replay(fileOf(existing), replayer);
+        }
+        return records;
+    }
+
+    /**
+     * 追加写入记录，返回写入位置，调用 {@link #sync} 等待落盘
+     */
+    public long appendAdd(List<Document> documents, List<float[]> embeddings) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(ADD);
+            out.writeInt(documents.size());
+            for (int i = 0; i < documents.size(); i++) {
+                Document document = documents.get(i);
+                writeString(out, document.getId());
+                writeString(out, document.getText());
+                writeString(out, OBJECT_MAPPER.writeValueAsString(document.getMetadata()));
+                float[] embedding = embeddings.get(i);
+                out.writeInt(embedding.length);
+                for (float v : embedding) {
+                    out.writeFloat(v);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return append(bytes.toByteArray());
+    }
+
+    /**
+     * 追加删除记录，返回写入位置，调用 {@link #sync} 等待落盘
+     */
+    public long appendDelete(Collection<String> ids) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(DELETE);
+            out.writeInt(ids.size());
+            for (String id : ids) {
+                writeString(out, id);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return append(bytes.toByteArray());
+    }
+
+    /**
+     * 等待 position 之前的内容落盘。已有线程在刷盘时排队等待，轮到时一次 fsync 覆盖期间所有线程追加的内容
+     */
+    public void sync(long position) {
+        if (synced >= position) {
+            return;
+        }
+        synchronized (syncLock) {
+            if (synced >= position) {
+                return;
+            }
+            long target;
+            FileChannel current;
+            synchronized (appendLock) {
+                target = appended;
+                current = channel;
+            }
+            try {
+                current.force(false);
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to sync write-ahead log", e);
+            }
+            synced = target;
+        }
+    }
+
+    /**
+     * 切换到新一代日志文件，调用方须保证此时没有并发写入
+     * @return 新一代的编号，此前各代的内容在快照保存后可以用 {@link #deleteBefore} 删除
+     */
+    public long rotate() {
+        synchronized (syncLock) {
+            synchronized (appendLock) {
+                try {
+                    channel.force(false);
+                    channel.close();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+                synced = appended;
+                channel = open(++generation);
+                return generation;
+            }
+        }
+    }
+
+    /**
+     * 删除编号小于 generation 的日志文件
+     */
+    public void deleteBefore(long generation) {
+        for (long existing : generations()) {
+            if (existing < generation) {
+                try {
+                    Files.deleteIfExists(fileOf(existing));
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 磁盘上全部日志文件的字节数，用于判断是否需要压实
+     */
+    public long size() {
+        return generations().stream().mapToLong(existing -> fileOf(existing).toFile().length()).sum();
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (syncLock) {
+            synchronized (appendLock) {
+                channel.force(false);
+                channel.close();
+                synced = appended;
+            }
+        }
+    }
+
+    private long append(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER + payload.length);
+        buffer.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+        synchronized (appendLock) {
+            try {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to append write-ahead log", e);
+            }
+            appended += buffer.limit();
+            return appended;
+        }
+    }
+
+    private int replay(Path file, Replayer replayer) {
+        int records = 0;
+        long valid = 0;
+        long fileSize = file.toFile().length();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            while (valid + RECORD_HEADER <= fileSize) {
+                int length = in.readInt();
+                int checksum = in.readInt();
+                // 长度越界或校验失败说明记录只写了一半（写入中途崩溃），视为日志末尾
+                if (length <= 0 || valid + RECORD_HEADER + length > fileSize) {
+                    break;
+                }
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                apply(payload, replayer);
+                valid += RECORD_HEADER + length;
+                records++;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        if (valid < fileSize) {
+            log.warn("Write-ahead log {} has a torn tail, truncating {} bytes.", file, fileSize - valid);
+            try (FileChannel truncate = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                truncate.truncate(valid);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return records;
+    }
+
+    private void apply(byte[] payload, Replayer replayer) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte type = in.readByte();
+        int count = in.readInt();
+        if (type == ADD) {
+            List<Document> documents = new ArrayList<>(count);
+            List<float[]> embeddings = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String id = readString(in);
+                String text = readString(in);
+                Map<String, Object> metadata = OBJECT_MAPPER.readValue(readString(in), METADATA_TYPE);
+                float[] embedding = new float[in.readInt()];
+                for (int j = 0; j < embedding.length; j++) {
+                    embedding[j] = in.readFloat();
+                }
+                documents.add(Document.builder().id(id).text(text).metadata(metadata).build());
+                embeddings.add(embedding);
+            }
+            replayer.add(documents, embeddings);
+        } else if (type == DELETE) {
+            List<String> ids = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                ids.add(readString(in));
+            }
+            replayer.delete(ids);
+        } else {
+            throw new IOException("Unknown write-ahead log record type " + type);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private FileChannel open(long generation) {
+        try {
+            return FileChannel.open(fileOf(generation), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open write-ahead log " + fileOf(generation), e);
+        }
+    }
+
+    private Path fileOf(long generation) {
+        return directory.resolve(name + "." + generation);
+    }
+
+    // 磁盘上已有的日志代，升序
+    private List<Long> generations() {
+        String prefix = name + ".";
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(file -> file.startsWith(prefix) && file.substring(prefix.length()).matches("\\d+"))
+                    .map(file -> Long.parseLong(file.substring(prefix.length())))
+                    .sorted()
+                    .toList();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}